@@ -0,0 +1,46 @@
+package org.garsooon.containerutils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single auto-restock of a container that was opened (touched) or left alone since its last restock.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AutoRestockBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean touched;
+
+    @Param({"true", "false"})
+    public boolean diff;
+
+    private ContainerUtils plugin;
+    private RestockContainer[] containers;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        plugin = BukkitStubs.createPlugin(Registries.tempDataFolder());
+        plugin.diffRestock = diff;
+        Registries.populate(plugin, size);
+        containers = plugin.getContainers().values().toArray(new RestockContainer[0]);
+    }
+
+    @Benchmark
+    public boolean autoRestock() {
+        RestockContainer container = containers[next];
+        next = (next + 1) % containers.length;
+        container.setTouched(touched);
+        return plugin.autoRestockContainer(container);
+    }
+}
@@ -0,0 +1,294 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.Chest;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lightweight proxy stubs of the Bukkit interfaces the restock paths touch.
+ * The stub world has a chest every CHEST_SPACING blocks, each inventory lives as long as the world does.
+ */
+final class BukkitStubs {
+
+    static final String WORLD_NAME = "world";
+    static final int CHEST_SIZE = 27;
+    // Registries.populate places chests this far apart, so no two pair up into a double chest
+    static final int CHEST_SPACING = 3;
+
+    private BukkitStubs() {
+    }
+
+    static ContainerUtils createPlugin(File dataFolder) throws Exception {
+        Server server = server(world(WORLD_NAME));
+        ContainerUtils plugin = new ContainerUtils();
+
+        // JavaPlugin.initialize is how the plugin loader hands over the server, its signature differs between builds
+        for (Method method : JavaPlugin.class.getDeclaredMethods()) {
+            if (!method.getName().equals("initialize")) continue;
+
+            Class<?>[] types = method.getParameterTypes();
+            Object[] args = new Object[types.length];
+            boolean dataFolderSet = false;
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == Server.class) args[i] = server;
+                else if (types[i] == PluginDescriptionFile.class) args[i] = new PluginDescriptionFile("ContainerUtils", "bench", ContainerUtils.class.getName());
+                else if (types[i] == ClassLoader.class) args[i] = BukkitStubs.class.getClassLoader();
+                else if (types[i] == File.class) {
+                    args[i] = dataFolderSet ? new File(dataFolder, "ContainerUtils.jar") : dataFolder;
+                    dataFolderSet = true;
+                }
+            }
+            method.setAccessible(true);
+            method.invoke(plugin, args);
+        }
+
+        dataFolder.mkdirs();
+        plugin.loadConfig();
+        return plugin;
+    }
+
+    static Server server(World world) {
+        BukkitScheduler scheduler = stub(BukkitScheduler.class, new Scheduler());
+        PluginManager pluginManager = stub(PluginManager.class, (method, args) -> null);
+        Player[] noPlayers = new Player[0];
+
+        return stub(Server.class, (method, args) -> {
+            switch (method) {
+                case "getWorld":
+                    return WORLD_NAME.equals(args[0]) ? world : null;
+                case "getOnlinePlayers":
+                    return noPlayers;
+                case "getScheduler":
+                    return scheduler;
+                case "getPluginManager":
+                    return pluginManager;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    static World world(String name) {
+        Map<ContainerKey, Inventory> inventories = new HashMap<>();
+        World[] self = new World[1];
+
+        self[0] = stub(World.class, (method, args) -> {
+            switch (method) {
+                case "getName":
+                    return name;
+                case "isChunkLoaded":
+                    return true;
+                case "getBlockTypeIdAt":
+                    return Math.floorMod((Integer) args[0], CHEST_SPACING) == 0 && Math.floorMod((Integer) args[2], CHEST_SPACING) == 0
+                            ? Material.CHEST.getId() : Material.AIR.getId();
+                case "getBlockAt": {
+                    int x = (Integer) args[0];
+                    int y = (Integer) args[1];
+                    int z = (Integer) args[2];
+                    return block(self[0], x, y, z, inventories.computeIfAbsent(ContainerKey.of(name, x, y, z), k -> inventory(CHEST_SIZE)));
+                }
+                default:
+                    return null;
+            }
+        });
+        return self[0];
+    }
+
+    static Block block(World world, int x, int y, int z, Inventory inventory) {
+        Chest state = stub(Chest.class, (method, args) -> {
+            switch (method) {
+                case "getInventory":
+                    return inventory;
+                case "getType":
+                    return Material.CHEST;
+                default:
+                    return null;
+            }
+        });
+
+        return stub(Block.class, (method, args) -> {
+            switch (method) {
+                case "getType":
+                    return Material.CHEST;
+                case "getTypeId":
+                    return Material.CHEST.getId();
+                case "getWorld":
+                    return world;
+                case "getX":
+                    return x;
+                case "getY":
+                    return y;
+                case "getZ":
+                    return z;
+                case "getState":
+                    return state;
+                case "getLocation":
+                    return new Location(world, x, y, z);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    // Runs the sync tasks that are due at the end of this server tick, benchmarks that schedule saves call it once per tick
+    static void runScheduledTasks(Server server) {
+        ((Scheduler) ((StubHandler) Proxy.getInvocationHandler(server.getScheduler())).handler).tick();
+    }
+
+    /**
+     * Sync delayed tasks wait for their delay in runScheduledTasks calls, async tasks run right away on the calling
+     * thread. Repeating tasks are never run, the benchmarks drive those methods themselves.
+     */
+    private static final class Scheduler implements Handler {
+
+        private final List<Task> delayed = new ArrayList<>();
+        private int nextId = 1;
+
+        @Override
+        public Object handle(String method, Object[] args) {
+            switch (method) {
+                case "scheduleSyncDelayedTask":
+                    delayed.add(new Task(nextId, (Runnable) args[1], args.length > 2 ? (Long) args[2] : 0L));
+                    return nextId++;
+                case "scheduleAsyncDelayedTask":
+                    ((Runnable) args[1]).run();
+                    return nextId++;
+                case "scheduleSyncRepeatingTask":
+                case "scheduleAsyncRepeatingTask":
+                    return nextId++;
+                case "cancelTask":
+                    delayed.removeIf(task -> task.id == (Integer) args[0]);
+                    return null;
+                default:
+                    return null;
+            }
+        }
+
+        void tick() {
+            List<Task> due = new ArrayList<>();
+            for (Iterator<Task> it = delayed.iterator(); it.hasNext(); ) {
+                Task task = it.next();
+                if (--task.remaining <= 0) {
+                    due.add(task);
+                    it.remove();
+                }
+            }
+            for (Task task : due) task.runnable.run();
+        }
+    }
+
+    private static final class Task {
+        final int id;
+        final Runnable runnable;
+        long remaining;
+
+        Task(int id, Runnable runnable, long delay) {
+            this.id = id;
+            this.runnable = runnable;
+            this.remaining = delay;
+        }
+    }
+
+    static Inventory inventory(int size) {
+        ItemStack[] slots = new ItemStack[size];
+
+        return stub(Inventory.class, (method, args) -> {
+            switch (method) {
+                case "getSize":
+                    return slots.length;
+                case "getItem":
+                    return slots[(Integer) args[0]];
+                case "setItem":
+                    slots[(Integer) args[0]] = (ItemStack) args[1];
+                    return null;
+                case "clear":
+                    if (args == null || args.length == 0) {
+                        Arrays.fill(slots, null);
+                    } else {
+                        slots[(Integer) args[0]] = null;
+                    }
+                    return null;
+                case "getContents":
+                    return slots.clone();
+                default:
+                    return null;
+            }
+        });
+    }
+
+    static ItemStack[] lootTemplate(int variant) {
+        ItemStack[] template = new ItemStack[CHEST_SIZE];
+        template[0] = new ItemStack(Material.getMaterial(264), 1 + variant % 3, (short) 0);
+        template[4] = new ItemStack(Material.getMaterial(265), 8, (short) 0);
+        template[13] = new ItemStack(Material.getMaterial(297), 2, (short) 0);
+        template[22] = new ItemStack(Material.getMaterial(351), 4, (short) (variant % 16));
+        return template;
+    }
+
+    interface Handler {
+        Object handle(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(BukkitStubs.class.getClassLoader(), new Class<?>[]{type}, new StubHandler(type, handler));
+    }
+
+    private static final class StubHandler implements InvocationHandler {
+
+        private final Class<?> type;
+        final Handler handler;
+
+        StubHandler(Class<?> type, Handler handler) {
+            this.type = type;
+            this.handler = handler;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                default:
+                    break;
+            }
+
+            Object result = handler.handle(method.getName(), args);
+            if (result == null && method.getReturnType().isPrimitive()) {
+                Class<?> r = method.getReturnType();
+                if (r == boolean.class) return false;
+                if (r == void.class) return null;
+                if (r == long.class) return 0L;
+                if (r == double.class) return 0.0;
+                if (r == float.class) return 0.0f;
+                return 0;
+            }
+            return result;
+        }
+    }
+}
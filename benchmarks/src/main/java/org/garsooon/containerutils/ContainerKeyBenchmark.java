@@ -0,0 +1,70 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key handling on the punch and restock paths: building a key from a block, the registry lookup,
+ * and the legacy string form used at the storage boundary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContainerKeyBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private ContainerUtils plugin;
+    private Block[] blocks;
+    private String[] legacyKeys;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        plugin = BukkitStubs.createPlugin(Registries.tempDataFolder());
+        Registries.populate(plugin, size);
+
+        World world = plugin.getServer().getWorld(BukkitStubs.WORLD_NAME);
+        RestockContainer[] containers = plugin.getContainers().values().toArray(new RestockContainer[0]);
+        blocks = new Block[containers.length];
+        legacyKeys = new String[containers.length];
+        for (int i = 0; i < containers.length; i++) {
+            ContainerKey key = containers[i].getKey();
+            blocks[i] = world.getBlockAt(key.getX(), key.getY(), key.getZ());
+            legacyKeys[i] = key.toString();
+        }
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = (next + 1) % blocks.length;
+        return i;
+    }
+
+    @Benchmark
+    public ContainerKey getLocationKey() {
+        return plugin.getLocationKey(blocks[nextIndex()]);
+    }
+
+    @Benchmark
+    public RestockContainer lookup() {
+        return plugin.getContainer(plugin.getLocationKey(blocks[nextIndex()]));
+    }
+
+    @Benchmark
+    public ContainerKey parseLegacy() {
+        return ContainerKey.parse(legacyKeys[nextIndex()]);
+    }
+
+    @Benchmark
+    public String toLegacy() {
+        return plugin.getLocationKey(blocks[nextIndex()]).toString();
+    }
+}
@@ -0,0 +1,54 @@
+package org.garsooon.containerutils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full synchronous save and load of the registry in both storage formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"yaml", "binary"})
+    public String format;
+
+    private ContainerUtils plugin;
+    private ContainerUtils loader;
+
+    @Setup
+    public void setup() throws Exception {
+        File dataFolder = Registries.tempDataFolder();
+        Files.write(new File(dataFolder, "config.yml").toPath(),
+                ("storage-format: " + format + "\n").getBytes(StandardCharsets.UTF_8));
+
+        plugin = BukkitStubs.createPlugin(dataFolder);
+        Registries.populate(plugin, size);
+        plugin.saveRestockData();
+
+        loader = BukkitStubs.createPlugin(dataFolder);
+    }
+
+    @Benchmark
+    public void save() {
+        plugin.saveRestockData();
+    }
+
+    @Benchmark
+    public int load() {
+        loader.clearRegisteredContainers();
+        loader.loadRestockData();
+        return loader.getContainers().size();
+    }
+}
@@ -0,0 +1,39 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Builds synthetic registries for the benchmarks.
+ */
+final class Registries {
+
+    // Restock interval used for every synthetic container, in seconds
+    static final int RESTOCK_TIME = 300;
+
+    private Registries() {
+    }
+
+    static File tempDataFolder() throws IOException {
+        File folder = Files.createTempDirectory("containerutils-bench").toFile();
+        folder.deleteOnExit();
+        return folder;
+    }
+
+    // Spreads size containers over a square area with deadlines spread over the whole interval,
+    // using a handful of distinct loot templates like a real dungeon map would
+    static void populate(ContainerUtils plugin, int size) {
+        int side = (int) Math.ceil(Math.sqrt(size));
+        for (int i = 0; i < size; i++) {
+            int x = (i % side) * BukkitStubs.CHEST_SPACING;
+            int z = (i / side) * BukkitStubs.CHEST_SPACING;
+            ContainerKey key = ContainerKey.of(BukkitStubs.WORLD_NAME, x, 64, z);
+
+            ItemStack[] items = BukkitStubs.lootTemplate(i % 32);
+            plugin.addContainer(new RestockContainer(key, plugin.templatePool.intern(items), RESTOCK_TIME), i % RESTOCK_TIME);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.garsooon.containerutils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One scheduler tick of the restock timer against registries of different sizes.
+ * With diff on, untouched containers are skipped, with diff off every due container is rewritten.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RestockTickBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean diff;
+
+    private ContainerUtils plugin;
+
+    @Setup
+    public void setup() throws Exception {
+        plugin = BukkitStubs.createPlugin(Registries.tempDataFolder());
+        plugin.diffRestock = diff;
+        Registries.populate(plugin, size);
+    }
+
+    // The delayed save runs like it would on a server, so the journal is flushed every save-delay-ticks instead of growing
+    @Benchmark
+    public void tick() {
+        plugin.runRestockTick();
+        BukkitStubs.runScheduledTasks(plugin.getServer());
+    }
+}
@@ -0,0 +1,51 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-world set of chunks that have a player within the activation range.
+ * Rebuilt once per second from player positions, so checking a container is a single set lookup.
+ */
+public class ActivityMap {
+
+    private Map<String, Set<Long>> active = new HashMap<>();
+
+    // Returns the previous map so the caller can tell which chunks just became active
+    public Map<String, Set<Long>> rebuild(Player[] players, int range) {
+        Map<String, Set<Long>> next = new HashMap<>();
+        for (Player player : players) {
+            Location loc = player.getLocation();
+            int chunkX = loc.getBlockX() >> 4;
+            int chunkZ = loc.getBlockZ() >> 4;
+            Set<Long> chunks = next.computeIfAbsent(player.getWorld().getName(), w -> new HashSet<>());
+            for (int cx = chunkX - range; cx <= chunkX + range; cx++) {
+                for (int cz = chunkZ - range; cz <= chunkZ + range; cz++) {
+                    chunks.add(ContainerKey.chunkKey(cx, cz));
+                }
+            }
+        }
+
+        Map<String, Set<Long>> previous = active;
+        active = next;
+        return previous;
+    }
+
+    public boolean isActive(ContainerKey key) {
+        Set<Long> chunks = active.get(key.getWorldName());
+        return chunks != null && chunks.contains(key.getChunkKey());
+    }
+
+    public Map<String, Set<Long>> getActive() {
+        return active;
+    }
+
+    public void clear() {
+        active = new HashMap<>();
+    }
+}
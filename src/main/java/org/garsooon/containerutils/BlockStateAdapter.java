@@ -0,0 +1,34 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.ContainerBlock;
+
+/**
+ * Adapter for single-block containers whose block state carries the inventory, like dispensers and furnaces.
+ */
+public class BlockStateAdapter implements InventoryAdapter {
+
+    private final boolean alwaysTouched;
+
+    public BlockStateAdapter(boolean alwaysTouched) {
+        this.alwaysTouched = alwaysTouched;
+    }
+
+    @Override
+    public ContainerInventory getInventory(Block block) {
+        BlockState state = block.getState();
+        if (!(state instanceof ContainerBlock)) return null;
+        return new ContainerInventory(((ContainerBlock) state).getInventory());
+    }
+
+    @Override
+    public Block getPartner(Block block) {
+        return null;
+    }
+
+    @Override
+    public boolean isAlwaysTouched() {
+        return alwaysTouched;
+    }
+}
@@ -0,0 +1,49 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Chest;
+
+/**
+ * Chests, a chest next to another chest is one double chest with the given block's half first.
+ */
+public class ChestAdapter implements InventoryAdapter {
+
+    private static final BlockFace[] SIDES = {BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST};
+
+    @Override
+    public ContainerInventory getInventory(Block block) {
+        BlockState state = block.getState();
+        if (!(state instanceof Chest)) return null;
+
+        Block partner = getPartner(block);
+        BlockState partnerState = partner != null ? partner.getState() : null;
+        if (!(partnerState instanceof Chest)) return new ContainerInventory(((Chest) state).getInventory());
+        return new ContainerInventory(((Chest) state).getInventory(), ((Chest) partnerState).getInventory());
+    }
+
+    // Beta never lets a chest touch more than one other chest. A neighbour across a chunk border is only looked at
+    // when that chunk is loaded, reading it would load or even generate the chunk, so the partner counts as missing.
+    @Override
+    public Block getPartner(Block block) {
+        World world = block.getWorld();
+        int x = block.getX();
+        int y = block.getY();
+        int z = block.getZ();
+        for (BlockFace side : SIDES) {
+            int nx = x + side.getModX();
+            int nz = z + side.getModZ();
+            if ((nx >> 4 != x >> 4 || nz >> 4 != z >> 4) && !world.isChunkLoaded(nx >> 4, nz >> 4)) continue;
+            if (world.getBlockTypeIdAt(nx, y, nz) == Material.CHEST.getId()) return world.getBlockAt(nx, y, nz);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isAlwaysTouched() {
+        return false;
+    }
+}
@@ -0,0 +1,33 @@
+package org.garsooon.containerutils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Number of registered containers per chunk and world, so an interaction with a container nobody registered
+ * can be turned away with one map lookup. Only used on the server thread.
+ */
+public class ChunkIndex {
+
+    private final Map<String, Map<Long, Integer>> counts = new HashMap<>();
+
+    public void add(ContainerKey key) {
+        counts.computeIfAbsent(key.getWorldName(), w -> new HashMap<>()).merge(key.getChunkKey(), 1, Integer::sum);
+    }
+
+    public void remove(ContainerKey key) {
+        Map<Long, Integer> worldCounts = counts.get(key.getWorldName());
+        if (worldCounts == null) return;
+        worldCounts.computeIfPresent(key.getChunkKey(), (chunk, count) -> count > 1 ? count - 1 : null);
+        if (worldCounts.isEmpty()) counts.remove(key.getWorldName());
+    }
+
+    public boolean contains(String world, int chunkX, int chunkZ) {
+        Map<Long, Integer> worldCounts = counts.get(world);
+        return worldCounts != null && worldCounts.containsKey(ContainerKey.chunkKey(chunkX, chunkZ));
+    }
+
+    public void clear() {
+        counts.clear();
+    }
+}
@@ -0,0 +1,50 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * The slots of one logical container. A double chest is both halves back to back, the half it was
+ * registered from first, so templates and restocks see one 54-slot inventory.
+ */
+public final class ContainerInventory {
+
+    private final Inventory first;
+    // Null for single-block containers
+    private final Inventory second;
+    private final int split;
+
+    public ContainerInventory(Inventory first) {
+        this(first, null);
+    }
+
+    public ContainerInventory(Inventory first, Inventory second) {
+        this.first = first;
+        this.second = second;
+        this.split = first.getSize();
+    }
+
+    public int getSize() {
+        return second == null ? split : split + second.getSize();
+    }
+
+    public ItemStack getItem(int slot) {
+        return slot < split ? first.getItem(slot) : second.getItem(slot - split);
+    }
+
+    public void setItem(int slot, ItemStack item) {
+        if (slot < split) {
+            first.setItem(slot, item);
+        } else {
+            second.setItem(slot - split, item);
+        }
+    }
+
+    public void clear(int slot) {
+        if (slot < split) {
+            first.clear(slot);
+        } else {
+            second.clear(slot - split);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.block.Block;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable block position used to key registered containers.
+ * The world is stored as a small interned id and x/y/z are packed into a single long,
+ * the legacy "world:x:y:z" form is only produced for restocks.yml and messages.
+ */
+public final class ContainerKey {
+
+    private static final Map<String, Integer> WORLD_IDS = new ConcurrentHashMap<>();
+    private static volatile String[] worldNames = new String[0];
+
+    private final int worldId;
+    private final long packed;
+    private final int hash;
+
+    private ContainerKey(int worldId, long packed) {
+        this.worldId = worldId;
+        this.packed = packed;
+        this.hash = 31 * worldId + (int) (packed ^ (packed >>> 32));
+    }
+
+    public static ContainerKey of(Block block) {
+        return of(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+    }
+
+    public static ContainerKey of(String worldName, int x, int y, int z) {
+        long packed = ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+        return new ContainerKey(worldId(worldName), packed);
+    }
+
+    // Parses the legacy "world:x:y:z" form, returns null if it is malformed
+    public static ContainerKey parse(String legacy) {
+        int c3 = legacy.lastIndexOf(':');
+        int c2 = c3 > 0 ? legacy.lastIndexOf(':', c3 - 1) : -1;
+        int c1 = c2 > 0 ? legacy.lastIndexOf(':', c2 - 1) : -1;
+        if (c1 <= 0) return null;
+
+        try {
+            int x = Integer.parseInt(legacy.substring(c1 + 1, c2));
+            int y = Integer.parseInt(legacy.substring(c2 + 1, c3));
+            int z = Integer.parseInt(legacy.substring(c3 + 1));
+            return of(legacy.substring(0, c1), x, y, z);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int worldId(String worldName) {
+        Integer id = WORLD_IDS.get(worldName);
+        if (id != null) return id;
+
+        synchronized (WORLD_IDS) {
+            id = WORLD_IDS.get(worldName);
+            if (id == null) {
+                String[] names = Arrays.copyOf(worldNames, worldNames.length + 1);
+                id = worldNames.length;
+                names[id] = worldName;
+                worldNames = names;
+                WORLD_IDS.put(worldName, id);
+            }
+            return id;
+        }
+    }
+
+    public String getWorldName() {
+        return worldNames[worldId];
+    }
+
+    public int getWorldId() {
+        return worldId;
+    }
+
+    public int getX() {
+        return (int) (packed >> 38);
+    }
+
+    public int getY() {
+        return (int) (packed << 52 >> 52);
+    }
+
+    public int getZ() {
+        return (int) (packed << 26 >> 38);
+    }
+
+    public int getChunkX() {
+        return getX() >> 4;
+    }
+
+    public int getChunkZ() {
+        return getZ() >> 4;
+    }
+
+    public long getChunkKey() {
+        return chunkKey(getChunkX(), getChunkZ());
+    }
+
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ContainerKey)) return false;
+        ContainerKey other = (ContainerKey) o;
+        return packed == other.packed && worldId == other.worldId;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return getWorldName() + ":" + getX() + ":" + getY() + ":" + getZ();
+    }
+}
@@ -0,0 +1,24 @@
+package org.garsooon.containerutils;
+
+/**
+ * Immutable copy of a container's persisted state, safe to hand to the async writer.
+ */
+final class ContainerSnapshot {
+
+    final ContainerKey key;
+    final RestockTemplate template;
+    // Wall-clock time of the next restock in epoch millis, so downtime counts towards it
+    final long due;
+    final int restockTime;
+    final String lootTable;
+    final String group;
+
+    ContainerSnapshot(ContainerKey key, RestockTemplate template, long due, int restockTime, String lootTable, String group) {
+        this.key = key;
+        this.template = template;
+        this.due = due;
+        this.restockTime = Math.max(1, restockTime);
+        this.lootTable = lootTable;
+        this.group = group;
+    }
+}
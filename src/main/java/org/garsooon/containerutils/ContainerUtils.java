@@ -1,13 +1,13 @@
 package org.garsooon.containerutils;
 
 import org.bukkit.ChatColor;
+import org.bukkit.Chunk;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
-import org.bukkit.block.Chest;
-import org.bukkit.block.Dispenser;
+import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.yaml.snakeyaml.Yaml;
@@ -16,16 +16,68 @@ import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Threading: the registry (containers, restock queue, pending chunk restocks, templates) has a single writer,
+ * the server thread. Async tasks never touch it directly, they get an immutable RegistrySnapshot taken on the
+ * server thread (the saver) or read the lock-free RestockMetrics counters (the stats dump). Readable collections
+ * are concurrent so a read from another thread sees a consistent view, but mutators refuse to run off-thread.
+ */
 public class ContainerUtils extends JavaPlugin {
 
-    public final Map<String, ItemStack[]> containerTemplates = new ConcurrentHashMap<>();
-    public final Map<String, Integer> containerTimers = new ConcurrentHashMap<>();
-    public final Map<String, Integer> containerRestockTimes = new ConcurrentHashMap<>();
-    public final Map<UUID, Integer> pendingRestockTimes = new HashMap<>();
-    public final Set<UUID> createModePlayers = new HashSet<>();
+    private static final int CHEST_SIZE = 27;
+
+    private final Map<ContainerKey, RestockContainer> containers = new ConcurrentHashMap<>();
+    private final Map<ContainerKey, RestockContainer> containersView = Collections.unmodifiableMap(containers);
+    public final TemplatePool templatePool = new TemplatePool();
+    public final Map<UUID, Integer> pendingRestockTimes = new ConcurrentHashMap<>();
+    public final Set<UUID> createModePlayers = ConcurrentHashMap.newKeySet();
+    public final Map<UUID, String> pendingTemplateNames = new ConcurrentHashMap<>();
+    public final Map<UUID, String> templateApplyPlayers = new ConcurrentHashMap<>();
+    public final Set<UUID> regionSelectPlayers = ConcurrentHashMap.newKeySet();
+    public final Map<UUID, ContainerKey> regionFirstCorners = new ConcurrentHashMap<>();
+    // An empty table name means the player is removing loot tables
+    public final Map<UUID, String> lootAssignPlayers = new ConcurrentHashMap<>();
+    // An empty group name means the player is taking containers out of their groups
+    public final Map<UUID, String> groupAssignPlayers = new ConcurrentHashMap<>();
 
     public int defaultRestockTime = 300;
     public boolean announceRestock = false;
+    public int maxRestocksPerTick = 0;
+    public int maxRestockMicrosPerTick = 0;
+    public int restockJitter = 0;
+    public int saveDelayTicks = 100;
+    public boolean diffRestock = true;
+    public int touchGraceSeconds = 300;
+    public double announceRadius = 10.0;
+    public int metricsDumpInterval = 0;
+    public int regionMicrosPerTick = 2000;
+    public boolean regionIncludeFurnaces = false;
+    public int activationRange = 0;
+    public long journalCompactBytes = 1024L * 1024L;
+    public int catchUpPerTick = 20;
+    private volatile Map<String, LootTable> lootTables = Collections.emptyMap();
+
+    private final DeadlineQueue<RestockContainer> restockQueue = new DeadlineQueue<>();
+    private final Map<String, RestockGroup> groups = new ConcurrentHashMap<>();
+    private final DeadlineQueue<RestockGroup> groupQueue = new DeadlineQueue<>();
+    private final ArrayDeque<RestockGroup> restockingGroups = new ArrayDeque<>();
+    private final Map<String, Map<Long, Set<RestockContainer>>> pendingChunkRestocks = new HashMap<>();
+    private final Map<String, Map<Long, Set<RestockContainer>>> inactiveRestocks = new HashMap<>();
+    private final ActivityMap activityMap = new ActivityMap();
+    private final ChunkIndex chunkIndex = new ChunkIndex();
+    private final InventoryAdapters inventoryAdapters = InventoryAdapters.defaults();
+    private long currentTick = 0L;
+    private final Random random = new Random();
+
+    private RestockStorage storage;
+    private RestockJournal journal;
+    private RestockAnnouncer announcer;
+    private final RestockMetrics metrics = new RestockMetrics();
+    private boolean saveDirty = false;
+    private long saveSequence = 0L;
+    private volatile boolean compacting = false;
+    private volatile boolean compactRequested = false;
+    private volatile Thread mainThread;
 
     private RestockCommand commandHandler;
     private ContainerUtilsListener eventListener;
@@ -37,6 +89,7 @@ public class ContainerUtils extends JavaPlugin {
     @Override
     public void onEnable() {
         System.out.println(ChatColor.GREEN + "[ContainerUtils] Plugin enabled.");
+        mainThread = Thread.currentThread();
         loadConfig();
         loadRestockData();
 
@@ -57,10 +110,22 @@ public class ContainerUtils extends JavaPlugin {
     public void onDisable() {
         System.out.println(ChatColor.YELLOW + "[ContainerUtils] Plugin disabled.");
         saveRestockData();
-        containerTemplates.clear();
-        containerTimers.clear();
-        containerRestockTimes.clear();
+        journal.close();
+        containers.clear();
+        chunkIndex.clear();
+        restockQueue.clear();
+        pendingChunkRestocks.clear();
+        inactiveRestocks.clear();
+        activityMap.clear();
+        templatePool.clear();
         createModePlayers.clear();
+        regionSelectPlayers.clear();
+        regionFirstCorners.clear();
+        lootAssignPlayers.clear();
+        groupAssignPlayers.clear();
+        groups.clear();
+        groupQueue.clear();
+        clearGroupBatches();
     }
 
     @SuppressWarnings("unchecked")
@@ -72,6 +137,21 @@ public class ContainerUtils extends JavaPlugin {
             config.put("default-restock-time", 300);
             config.put("announce-restock", false);
             config.put("allow-player-registration", true);
+            config.put("max-restocks-per-tick", 0);
+            config.put("max-restock-micros-per-tick", 0);
+            config.put("restock-jitter", 0);
+            config.put("save-delay-ticks", 100);
+            config.put("journal-compact-kb", 1024);
+            config.put("catch-up-per-tick", 20);
+            config.put("storage-format", "yaml");
+            config.put("diff-restock", true);
+            config.put("touch-grace-seconds", 300);
+            config.put("announce-radius", 10);
+            config.put("metrics-dump-interval", 0);
+            config.put("region-micros-per-tick", 2000);
+            config.put("region-include-furnaces", false);
+            config.put("activation-range", 0);
+            config.put("loot-tables", exampleLootTables());
             saveConfigFile();
         }
 
@@ -86,8 +166,70 @@ public class ContainerUtils extends JavaPlugin {
             System.out.println(ChatColor.RED + "[ContainerUtils] Failed to load config: " + e.getMessage());
         }
 
-        defaultRestockTime = getInt("default-restock-time", 300);
+        defaultRestockTime = Math.max(1, getInt("default-restock-time", 300));
         announceRestock = getBoolean("announce-restock", false);
+        maxRestocksPerTick = Math.max(0, getInt("max-restocks-per-tick", 0));
+        maxRestockMicrosPerTick = Math.max(0, getInt("max-restock-micros-per-tick", 0));
+        restockJitter = Math.max(0, getInt("restock-jitter", 0));
+        saveDelayTicks = Math.max(1, getInt("save-delay-ticks", 100));
+        journalCompactBytes = Math.max(16, getInt("journal-compact-kb", 1024)) * 1024L;
+        catchUpPerTick = Math.max(1, getInt("catch-up-per-tick", 20));
+        diffRestock = getBoolean("diff-restock", true);
+        touchGraceSeconds = Math.max(0, getInt("touch-grace-seconds", 300));
+        announceRadius = Math.max(0.0, getDouble("announce-radius", 10.0));
+        if (announcer == null) announcer = new RestockAnnouncer(getServer());
+        announcer.setRadius(announceRadius);
+        metricsDumpInterval = Math.max(0, getInt("metrics-dump-interval", 0));
+        regionMicrosPerTick = Math.max(100, getInt("region-micros-per-tick", 2000));
+        regionIncludeFurnaces = getBoolean("region-include-furnaces", false);
+        activationRange = Math.max(0, getInt("activation-range", 0));
+
+        loadLootTables();
+
+        if (storage == null) storage = new RestockStorage(getDataFolder());
+        if (journal == null) journal = new RestockJournal(getDataFolder());
+        Object format = config.get("storage-format");
+        storage.setBinary(format != null && "binary".equalsIgnoreCase(format.toString()));
+    }
+
+    // Tables that fail to parse are skipped with a message, containers using them fall back to their template
+    @SuppressWarnings("unchecked")
+    private void loadLootTables() {
+        Map<String, LootTable> tables = new HashMap<>();
+        Object section = config.get("loot-tables");
+        if (section instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) section).entrySet()) {
+                String name = String.valueOf(entry.getKey()).toLowerCase();
+                try {
+                    tables.put(name, LootTable.parse(name, entry.getValue()));
+                } catch (IllegalArgumentException e) {
+                    System.out.println(ChatColor.RED + "[ContainerUtils] Skipping loot table '" + name + "': " + e.getMessage());
+                }
+            }
+        }
+        lootTables = tables;
+    }
+
+    private static Map<String, Object> exampleLootTables() {
+        Map<String, Object> bread = new LinkedHashMap<>();
+        bread.put("type", "BREAD");
+        bread.put("weight", 10);
+        bread.put("amount", "1-4");
+        Map<String, Object> iron = new LinkedHashMap<>();
+        iron.put("type", "IRON_INGOT");
+        iron.put("weight", 4);
+        iron.put("amount", "1-3");
+        Map<String, Object> diamond = new LinkedHashMap<>();
+        diamond.put("type", "DIAMOND");
+        diamond.put("weight", 1);
+        diamond.put("amount", 1);
+
+        Map<String, Object> example = new LinkedHashMap<>();
+        example.put("rolls", "2-4");
+        example.put("entries", Arrays.asList(bread, iron, diamond));
+        Map<String, Object> tables = new LinkedHashMap<>();
+        tables.put("example", example);
+        return tables;
     }
 
     public void saveConfigFile() {
@@ -103,101 +245,328 @@ public class ContainerUtils extends JavaPlugin {
     }
 
     public void loadRestockData() {
-        File file = new File(getDataFolder(), "restocks.yml");
-        if (!file.exists()) {
-            System.out.println("[ContainerUtils] No restocks.yml file found.");
-            return;
-        }
+        try {
+            RegistrySnapshot loaded = storage.load(defaultRestockTime);
+            boolean replayed = journal.hasRecords();
+            if (replayed) loaded = journal.replay(loaded);
+            if (loaded == null) {
+                System.out.println("[ContainerUtils] No restock data file found.");
+                return;
+            }
 
-        try (InputStream input = new FileInputStream(file)) {
-            Object raw = yaml.load(input);
-            if (!(raw instanceof Map)) return;
+            int merged = installSnapshot(loaded);
 
-            Map<String, Object> data = (Map<String, Object>) raw;
+            System.out.println(ChatColor.GREEN + "[ContainerUtils] Loaded restock data from " + storage.getFileName());
 
-            for (Map.Entry<String, Object> entry : data.entrySet()) {
-                String loc = entry.getKey();
-                Map<String, Object> containerData = (Map<String, Object>) entry.getValue();
+            // Folds the replayed records and merged double chests into the snapshot so the journal starts out empty
+            if (replayed || merged > 0) saveRestockData();
+        } catch (Exception e) {
+            System.out.println(ChatColor.RED + "[ContainerUtils] Failed to load restock data: " + e.getMessage());
+        }
+    }
 
-                List<Map<String, Object>> itemData = (List<Map<String, Object>>) containerData.get("items");
-                int timer = (int) containerData.get("timer");
-                int customTime = containerData.containsKey("restock_time") ? (int) containerData.get("restock_time") : defaultRestockTime;
+    // Marks the journal dirty, changes made within save-delay-ticks are written and fsynced in the background as one batch.
+    // Once the journal passes journal-compact-kb the batch is folded into a full snapshot instead.
+    public void requestSave() {
+        if (saveDirty) return;
+        saveDirty = true;
 
-                ItemStack[] contents = new ItemStack[itemData.size()];
-                for (int i = 0; i < itemData.size(); i++) {
-                    Map<String, Object> itemMap = itemData.get(i);
-                    contents[i] = itemMap != null ? deserializeItemStack(itemMap) : null;
+        getServer().getScheduler().scheduleSyncDelayedTask(this, () -> {
+            saveDirty = false;
+            if (compacting || (!compactRequested && journal.size() < journalCompactBytes)) {
+                getServer().getScheduler().scheduleAsyncDelayedTask(this, this::flushJournal);
+                return;
+            }
+
+            compactRequested = false;
+            compacting = true;
+            final RegistrySnapshot snapshot = snapshotContainers();
+            final long sequence = ++saveSequence;
+            journal.seal();
+            getServer().getScheduler().scheduleAsyncDelayedTask(this, () -> {
+                try {
+                    boolean flushed = flushJournal();
+                    if (writeRestockData(snapshot, sequence) && flushed) journal.deleteOld();
+                } finally {
+                    compacting = false;
                 }
+            });
+        }, saveDelayTicks);
+    }
 
-                containerTemplates.put(loc, contents);
-                containerTimers.put(loc, timer);
-                containerRestockTimes.put(loc, customTime);
-            }
+    // Synchronous full save, used on disable so nothing is lost. The journal is only dropped once the snapshot is written.
+    public void saveRestockData() {
+        saveDirty = false;
+        if (writeRestockData(snapshotContainers(), ++saveSequence)) {
+            journal.reset();
+        } else {
+            flushJournal();
+        }
+    }
 
-            System.out.println(ChatColor.GREEN + "[ContainerUtils] Loaded restock data from restocks.yml");
-        } catch (Exception e) {
-            System.out.println(ChatColor.RED + "[ContainerUtils] Failed to load restock data: " + e.getMessage());
+    private boolean flushJournal() {
+        try {
+            long start = System.nanoTime();
+            journal.flush();
+            metrics.recordJournalFlush(System.nanoTime() - start);
+            return true;
+        } catch (IOException e) {
+            System.out.println(ChatColor.RED + "[ContainerUtils] Failed to write restock journal: " + e.getMessage());
+            // The records that failed are only in memory now, the next save writes a full snapshot
+            compactRequested = true;
+            return false;
         }
     }
 
-    public void saveRestockData() {
-        File file = new File(getDataFolder(), "restocks.yml");
+    private void journalContainer(RestockContainer container) {
+        RestockGroup group = container.getGroup();
+        journal.register(container.getKey(), container.getTemplate(), container.getRestockTime(),
+                getDueMillis(container, System.currentTimeMillis()), container.getLootTable(), group != null ? group.getName() : null);
+    }
+
+    private void journalGroup(RestockGroup group) {
+        journal.group(group.getName(), group.getRestockTime(), getDueMillis(group, System.currentTimeMillis()));
+    }
+
+    // Wall-clock time of the next restock. Containers waiting for a chunk load or a player are already due.
+    private long getDueMillis(Scheduled entry, long now) {
+        if (entry instanceof RestockContainer && ((RestockContainer) entry).getGroup() != null) {
+            entry = ((RestockContainer) entry).getGroup();
+        }
+        long deadline = entry.getDeadline();
+        if (deadline < 0) return now;
+        return now + Math.max(0L, deadline - currentTick) * 50L;
+    }
+
+    // Templates are immutable, so the snapshot can share them with the live containers
+    private RegistrySnapshot snapshotContainers() {
+        templatePool.prune(containers.values());
+
+        long now = System.currentTimeMillis();
+        List<ContainerSnapshot> snapshot = new ArrayList<>(containers.size());
+        for (RestockContainer container : containers.values()) {
+            RestockGroup group = container.getGroup();
+            snapshot.add(new ContainerSnapshot(container.getKey(), container.getTemplate(), getDueMillis(container, now),
+                    container.getRestockTime(), container.getLootTable(), group != null ? group.getName() : null));
+        }
 
-        Map<String, Object> data = new HashMap<>();
-        for (Map.Entry<String, ItemStack[]> entry : containerTemplates.entrySet()) {
-            String loc = entry.getKey();
-            List<Map<String, Object>> items = new ArrayList<>();
+        List<GroupSnapshot> groupSnapshot = new ArrayList<>(groups.size());
+        for (RestockGroup group : groups.values()) {
+            groupSnapshot.add(new GroupSnapshot(group.getName(), group.getRestockTime(), getDueMillis(group, now)));
+        }
+        return new RegistrySnapshot(snapshot, new HashMap<>(templatePool.getNamed()), groupSnapshot);
+    }
+
+    // Containers that came due while the server was down are restocked oldest first in one catch-up pass,
+    // catch-up-per-tick at a time, instead of all of them firing in the first tick. Overdue groups start in the first tick
+    // and are handed out under the normal restock budget. Returns the number of double chests merged from two halves.
+    private int installSnapshot(RegistrySnapshot loaded) {
+        long now = System.currentTimeMillis();
+        for (GroupSnapshot snapshot : loaded.groups) {
+            RestockGroup group = new RestockGroup(snapshot.name, snapshot.restockTime);
+            groups.put(group.getName(), group);
+            groupQueue.schedule(group, currentTick + Math.max(1L, (snapshot.due - now + 49L) / 50L));
+        }
 
-            for (ItemStack item : entry.getValue()) {
-                items.add(item != null ? serializeItemStack(item) : null);
+        List<ContainerSnapshot> ordered = mergeDoubleChestHalves(loaded.containers);
+        int merged = loaded.containers.size() - ordered.size();
+        if (merged > 0) {
+            System.out.println(ChatColor.GREEN + "[ContainerUtils] Merged " + merged + " double chests registered as two halves.");
+        }
+        ordered.sort(Comparator.comparingLong(snapshot -> snapshot.due));
+
+        int overdue = 0;
+        for (ContainerSnapshot snapshot : ordered) {
+            RestockContainer container = new RestockContainer(snapshot.key, templatePool.intern(snapshot.template), snapshot.restockTime);
+            container.setLootTable(snapshot.lootTable);
+            putContainer(container);
+
+            RestockGroup group = snapshot.group != null ? groups.get(snapshot.group) : null;
+            if (group != null) {
+                group.add(container);
+                container.setGroup(group);
+            } else if (snapshot.due > now) {
+                restockQueue.schedule(container, currentTick + (snapshot.due - now + 49L) / 50L);
+            } else {
+                restockQueue.schedule(container, currentTick + 1L + overdue / catchUpPerTick);
+                overdue++;
             }
+        }
+        if (overdue > 0) {
+            System.out.println(ChatColor.YELLOW + "[ContainerUtils] " + overdue + " containers came due while offline, catching up over "
+                    + ((overdue + catchUpPerTick - 1) / catchUpPerTick) + " ticks.");
+        }
+        for (Map.Entry<String, RestockTemplate> entry : loaded.namedTemplates.entrySet()) {
+            templatePool.setName(entry.getKey(), entry.getValue());
+        }
+        return merged;
+    }
 
-            Map<String, Object> containerData = new HashMap<>();
-            containerData.put("items", items);
-            containerData.put("timer", containerTimers.getOrDefault(loc, defaultRestockTime));
-            containerData.put("restock_time", containerRestockTimes.getOrDefault(loc, defaultRestockTime));
-            data.put(loc, containerData);
+    // Double chests used to be registered half by half. Only chests have 27 slots in Beta and a chest touches at most
+    // one other chest, so two side by side 27-slot containers at the same height are the halves of one double chest.
+    // They become one container under the lower half's key with both templates back to back, the earlier due time,
+    // and the lower half's interval. Halves with different loot tables or groups are left as they are.
+    private static List<ContainerSnapshot> mergeDoubleChestHalves(List<ContainerSnapshot> loaded) {
+        Map<ContainerKey, ContainerSnapshot> halves = new HashMap<>();
+        for (ContainerSnapshot snapshot : loaded) {
+            if (snapshot.template.getSize() == CHEST_SIZE) halves.put(snapshot.key, snapshot);
+        }
+
+        Map<ContainerKey, ContainerSnapshot> pairs = new HashMap<>();
+        Set<ContainerKey> paired = new HashSet<>();
+        for (ContainerSnapshot lower : halves.values()) {
+            if (paired.contains(lower.key)) continue;
+            ContainerSnapshot upper = findOtherHalf(halves, paired, lower, 1, 0);
+            if (upper == null) upper = findOtherHalf(halves, paired, lower, 0, 1);
+            if (upper == null) continue;
+            paired.add(lower.key);
+            paired.add(upper.key);
+            pairs.put(lower.key, upper);
+        }
+        if (pairs.isEmpty()) return new ArrayList<>(loaded);
+
+        List<ContainerSnapshot> result = new ArrayList<>(loaded.size() - pairs.size());
+        for (ContainerSnapshot snapshot : loaded) {
+            ContainerSnapshot upper = pairs.get(snapshot.key);
+            if (upper != null) {
+                ItemStack[] items = new ItemStack[CHEST_SIZE * 2];
+                System.arraycopy(snapshot.template.getItems(), 0, items, 0, CHEST_SIZE);
+                System.arraycopy(upper.template.getItems(), 0, items, CHEST_SIZE, CHEST_SIZE);
+                result.add(new ContainerSnapshot(snapshot.key, new RestockTemplate(RestockTemplate.contentId(items), items),
+                        Math.min(snapshot.due, upper.due), snapshot.restockTime, snapshot.lootTable, snapshot.group));
+            } else if (!paired.contains(snapshot.key)) {
+                result.add(snapshot);
+            }
         }
+        return result;
+    }
+
+    private static ContainerSnapshot findOtherHalf(Map<ContainerKey, ContainerSnapshot> halves, Set<ContainerKey> paired,
+                                                   ContainerSnapshot lower, int dx, int dz) {
+        ContainerKey key = lower.key;
+        ContainerSnapshot upper = halves.get(ContainerKey.of(key.getWorldName(), key.getX() + dx, key.getY(), key.getZ() + dz));
+        if (upper == null || paired.contains(upper.key)) return null;
+        if (!Objects.equals(lower.lootTable, upper.lootTable) || !Objects.equals(lower.group, upper.group)) return null;
+        return upper;
+    }
 
-        try (Writer writer = new FileWriter(file)) {
-            yaml.dump(data, writer);
-            System.out.println(ChatColor.GREEN + "[ContainerUtils] Saved restock data to restocks.yml");
+    private boolean writeRestockData(RegistrySnapshot snapshot, long sequence) {
+        try {
+            long start = System.nanoTime();
+            storage.write(snapshot, sequence);
+            metrics.recordSave(System.nanoTime() - start);
+            System.out.println(ChatColor.GREEN + "[ContainerUtils] Saved restock data to " + storage.getFileName());
+            return true;
         } catch (IOException e) {
             System.out.println(ChatColor.RED + "[ContainerUtils] Failed to save restock data: " + e.getMessage());
+            return false;
         }
     }
 
-    // Doesn't serialize nbt data at all, reads as null. Im not going to fix it, someone else can if they want
+    public File exportYaml() throws IOException {
+        File file = new File(getDataFolder(), RestockStorage.EXPORT_FILE);
+        storage.writeYaml(snapshotContainers(), file);
+        return file;
+    }
+
+    // Replaces the registry with the contents of the export file
+    public int importYaml() throws IOException {
+        File file = new File(getDataFolder(), RestockStorage.EXPORT_FILE);
+        if (!file.exists()) throw new FileNotFoundException(RestockStorage.EXPORT_FILE + " does not exist");
+
+        RegistrySnapshot imported = storage.readYaml(file, defaultRestockTime);
+        checkMainThread();
+        containers.clear();
+        chunkIndex.clear();
+        restockQueue.clear();
+        pendingChunkRestocks.clear();
+        inactiveRestocks.clear();
+        templatePool.clear();
+        groups.clear();
+        groupQueue.clear();
+        clearGroupBatches();
+        installSnapshot(imported);
+        compactRequested = true;
+        requestSave();
+        return imported.containers.size();
+    }
+
+    // Beta stacks carry no nbt and the data value is the durability, type, amount and durability are everything there is.
+    // Types the server has no Material for are written by id so they survive a round trip.
     public static Map<String, Object> serializeItemStack(ItemStack item) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("type", item.getType().name());
+        Map<String, Object> map = new LinkedHashMap<>();
+        Material type = MaterialTable.byId(item.getTypeId());
+        if (type != null) {
+            map.put("type", type.name());
+        } else {
+            map.put("id", item.getTypeId());
+        }
         map.put("amount", item.getAmount());
         map.put("durability", item.getDurability());
         return map;
     }
 
+    // Returns null, leaving the slot empty, when the stack can't be resolved
     public static ItemStack deserializeItemStack(Map<String, Object> map) {
-        Material type = Material.matchMaterial((String) map.get("type"));
-        int amount = (int) map.get("amount");
-        short durability = map.containsKey("durability") ? ((Integer) map.get("durability")).shortValue() : 0;
-        return new ItemStack(type, amount, durability);
+        int typeId;
+        Object id = map.get("id");
+        if (id instanceof Number) {
+            typeId = ((Number) id).intValue();
+        } else {
+            Material type = MaterialTable.byName(String.valueOf(map.get("type")));
+            if (type == null) {
+                System.out.println(ChatColor.RED + "[ContainerUtils] Unknown item type '" + map.get("type") + "', leaving the slot empty.");
+                return null;
+            }
+            typeId = type.getId();
+        }
+
+        Object amount = map.get("amount");
+        Object durability = map.get("durability");
+        return new ItemStack(typeId,
+                amount instanceof Number ? ((Number) amount).intValue() : 1,
+                durability instanceof Number ? ((Number) durability).shortValue() : 0);
     }
 
     public boolean isContainer(Block block) {
-        Material type = block.getType();
-        return type == Material.CHEST || type == Material.DISPENSER;
+        return inventoryAdapters.get(block) != null;
     }
 
     public void registerContainer(Block block, Player player) {
-        BlockState state = block.getState();
-        Inventory inv = getInventoryFromState(state);
+        checkMainThread();
+        ContainerKey key = getLocationKey(block);
+        ContainerInventory inv = getInventory(block, key);
         if (inv == null) {
             player.sendMessage(ChatColor.RED + "Cannot register container: Inventory not accessible.");
-            System.out.println(ChatColor.RED + "[ContainerUtils] Failed to get inventory for container at " + getLocationKey(block));
+            System.out.println(ChatColor.RED + "[ContainerUtils] Failed to get inventory for container at " + key);
             return;
         }
 
-        String key = getLocationKey(block);
+        removeOtherHalf(block, key);
+        journalContainer(registerInventory(key, inv, isAlwaysTouched(block)));
+
+        player.sendMessage(ChatColor.GREEN + "Container registered for restocking! Punch without sneaking to restock.");
+        System.out.println(ChatColor.GREEN + "[ContainerUtils] Registered container at " + key + " with " + inv.getSize() + " slots.");
+
+        requestSave();
+    }
+
+    // Registers a container found by a region scan, containers that are already registered are left alone.
+    // Journals the container but does not request a save, the caller does that once when the whole batch is done.
+    public boolean registerState(BlockState state) {
+        checkMainThread();
+        Block block = state.getBlock();
+        ContainerKey key = getLocationKey(block);
+        if (containers.containsKey(key)) return false;
+
+        ContainerInventory inv = getInventory(block, key);
+        if (inv == null) return false;
+
+        journalContainer(registerInventory(key, inv, isAlwaysTouched(block)));
+        return true;
+    }
+
+    private RestockContainer registerInventory(ContainerKey key, ContainerInventory inv, boolean alwaysTouched) {
         ItemStack[] template = new ItemStack[inv.getSize()];
         for (int i = 0; i < inv.getSize(); i++) {
             ItemStack item = inv.getItem(i);
@@ -206,117 +575,667 @@ public class ContainerUtils extends JavaPlugin {
             }
         }
 
-        containerTemplates.put(key, template);
-        containerTimers.put(key, defaultRestockTime);
-        containerRestockTimes.put(key, defaultRestockTime);
+        RestockContainer container = new RestockContainer(key, templatePool.intern(template), defaultRestockTime);
+        putContainer(container);
+        container.setTouched(alwaysTouched);
+        long jitterTicks = restockJitter > 0 ? random.nextInt(restockJitter * 20 + 1) : 0L;
+        restockQueue.schedule(container, currentTick + intervalTicks(defaultRestockTime) + jitterTicks);
+        return container;
+    }
 
-        player.sendMessage(ChatColor.GREEN + "Container registered for restocking! Punch without sneaking to restock.");
-        System.out.println(ChatColor.GREEN + "[ContainerUtils] Registered container at " + key + " with " + inv.getSize() + " slots.");
+    // Gives the container the template's contents, registering it first if needed, and restocks it right away
+    public void applyTemplate(Block block, RestockTemplate template, Player player) {
+        checkMainThread();
+        ContainerKey key = getLocationKey(block);
+        ContainerInventory inv = getInventory(block, key);
+        if (inv == null) {
+            player.sendMessage(ChatColor.RED + "Cannot apply template: Inventory not accessible.");
+            return;
+        }
 
-        saveRestockData();
+        RestockContainer container = containers.get(key);
+        if (container == null) {
+            container = new RestockContainer(key, template, defaultRestockTime);
+            putContainer(container);
+        } else {
+            container.setTemplate(template);
+            container.setLootTable(null);
+        }
+
+        fillInventory(inv, template.getItems(), true);
+        settleTouched(container, isAlwaysTouched(block));
+        unpark(container);
+        setRestockTimer(container, container.getRestockTime());
+        journalContainer(container);
+        requestSave();
+    }
+
+    // Sets or removes (tableName null) the loot table of a registered container and restocks it right away
+    public void assignLootTable(Block block, String tableName, Player player) {
+        checkMainThread();
+        RestockContainer container = containers.get(getLocationKey(block));
+        if (container == null) {
+            player.sendMessage(ChatColor.RED + "This container is not registered.");
+            return;
+        }
+
+        ContainerInventory inv = getInventory(block, container.getKey());
+        if (inv == null) {
+            player.sendMessage(ChatColor.RED + "Cannot assign loot table: Inventory not accessible.");
+            return;
+        }
+
+        container.setLootTable(tableName);
+        fillContainer(inv, container);
+        settleTouched(container, isAlwaysTouched(block));
+        unpark(container);
+        setRestockTimer(container, container.getRestockTime());
+        journalContainer(container);
+        requestSave();
+    }
+
+    public LootTable getLootTable(String name) {
+        return lootTables.get(name.toLowerCase());
+    }
+
+    public Map<String, LootTable> getLootTables() {
+        return Collections.unmodifiableMap(lootTables);
+    }
+
+    public void setContainerRestockTime(RestockContainer container, int seconds) {
+        checkMainThread();
+        container.setRestockTime(seconds);
+        setRestockTimer(container, container.getRestockTime());
+        journal.interval(container.getKey(), container.getRestockTime());
+        journal.checkpoint(container.getKey(), getDueMillis(container, System.currentTimeMillis()));
+        requestSave();
+    }
+
+    public void nameTemplate(String name, RestockTemplate template) {
+        checkMainThread();
+        templatePool.setName(name, template);
+        journal.templateName(name.toLowerCase(), template);
+        requestSave();
+    }
+
+    public boolean removeTemplateName(String name) {
+        checkMainThread();
+        if (!templatePool.removeName(name)) return false;
+        journal.templateName(name.toLowerCase(), null);
+        requestSave();
+        return true;
+    }
+
+    public void startRegionRegistration(CommandSender sender, World world, int x1, int y1, int z1, int x2, int y2, int z2) {
+        long chunks = RegionRegistration.countChunks(x1, z1, x2, z2);
+        if (chunks > RegionRegistration.MAX_CHUNKS) {
+            sender.sendMessage(ChatColor.RED + "That region covers " + chunks + " chunks, the limit is " + RegionRegistration.MAX_CHUNKS + ".");
+            return;
+        }
+
+        RegionRegistration job = new RegionRegistration(this, sender, world, x1, y1, z1, x2, y2, z2, regionMicrosPerTick * 1000L);
+        job.setTaskId(getServer().getScheduler().scheduleSyncRepeatingTask(this, job, 1L, 1L));
+        sender.sendMessage(ChatColor.YELLOW + "Scanning " + job.getChunkCount() + " chunks for containers...");
     }
 
     public void clearRegisteredContainers() {
-        containerTemplates.clear();
-        containerTimers.clear();
-        containerRestockTimes.clear();
-        saveRestockData();
+        checkMainThread();
+        containers.clear();
+        chunkIndex.clear();
+        restockQueue.clear();
+        pendingChunkRestocks.clear();
+        inactiveRestocks.clear();
+        for (RestockGroup group : groups.values()) group.clearMembers();
+        journal.clear();
+        requestSave();
     }
 
     public void restockContainer(Block block, Player player) {
-        String key = getLocationKey(block);
-        ItemStack[] template = containerTemplates.get(key);
-        if (template == null) {
+        RestockContainer container = containers.get(getLocationKey(block));
+        if (container == null) {
             player.sendMessage(ChatColor.RED + "This container is not registered for restocking.");
             return;
         }
 
-        Inventory inv = getInventoryFromState(block.getState());
+        ContainerInventory inv = getInventory(block, container.getKey());
         if (inv == null) {
             player.sendMessage(ChatColor.RED + "Cannot restock container: Inventory not accessible.");
             return;
         }
 
-        inv.clear();
-        for (int i = 0; i < template.length && i < inv.getSize(); i++) {
-            if (template[i] != null) {
-                inv.setItem(i, template[i].clone());
-            }
-        }
+        fillContainer(inv, container);
+        settleTouched(container, isAlwaysTouched(block));
+        unpark(container);
 
-        containerTimers.put(key, containerRestockTimes.getOrDefault(key, defaultRestockTime));
+        setRestockTimer(container, container.getRestockTime());
+        journal.checkpoint(container.getKey(), getDueMillis(container, System.currentTimeMillis()));
+        requestSave();
         if (player != null) player.sendMessage(ChatColor.GREEN + "Container restocked!");
     }
 
+    // Runs every tick but only touches containers whose deadline has passed.
+    // Anything over the per-tick budget stays in the queue, oldest deadline first, for the next tick.
     private void startRestockTimer() {
-        getServer().getScheduler().scheduleSyncRepeatingTask(this, () -> {
-            for (Map.Entry<String, Integer> entry : containerTimers.entrySet()) {
-                String key = entry.getKey();
-                int timeLeft = entry.getValue();
-
-                if (timeLeft <= 0) {
-                    autoRestockContainer(key);
-                    containerTimers.put(key, containerRestockTimes.getOrDefault(key, defaultRestockTime));
-                } else {
-                    containerTimers.put(key, timeLeft - 1);
+        getServer().getScheduler().scheduleSyncRepeatingTask(this, this::runRestockTick, 1L, 1L);
+    }
+
+    // Package-private so the benchmarks can drive single ticks
+    void runRestockTick() {
+        long start = System.nanoTime();
+        currentTick++;
+        if (currentTick % 20L == 0L) updateActivity();
+        long timeLimit = maxRestockMicrosPerTick > 0 ? System.nanoTime() + maxRestockMicrosPerTick * 1000L : 0L;
+        int restocked = 0;
+        // A due group gets its next deadline right away, its members are handed out under the same budget as single
+        // containers, in chunk order and ahead of them, across as many ticks as it takes
+        RestockGroup due;
+        while ((due = groupQueue.pollDue(currentTick)) != null) {
+            if (!due.isRestocking()) {
+                due.startBatch();
+                restockingGroups.add(due);
+            }
+            groupQueue.schedule(due, currentTick + intervalTicks(due.getRestockTime()));
+            journalGroup(due);
+        }
+        while (!restockingGroups.isEmpty() && !overBudget(restocked, timeLimit)) {
+            RestockGroup group = restockingGroups.peek();
+            RestockContainer member = group.nextInBatch();
+            if (member == null) {
+                restockingGroups.poll();
+                continue;
+            }
+            // Left the group or was removed since the batch started
+            if (member.getGroup() != group || containers.get(member.getKey()) != member) continue;
+            restocked++;
+            autoRestockContainer(member);
+        }
+        while (restockQueue.peekDeadline() <= currentTick) {
+            if (overBudget(restocked, timeLimit)) break;
+
+            RestockContainer container = restockQueue.pollDue(currentTick);
+            restocked++;
+            // Deferred or removed containers stay out of the queue
+            if (autoRestockContainer(container)) {
+                setRestockTimer(container, container.getRestockTime());
+                checkpointRestock(container);
+            }
+        }
+        if (restocked > 0) requestSave();
+        announcer.flush();
+
+        if (currentTick % 20L == 0L) {
+            metrics.rollSecond();
+            if (metricsDumpInterval > 0 && currentTick % (metricsDumpInterval * 20L) == 0L) dumpMetrics();
+        }
+        metrics.recordTick(System.nanoTime() - start);
+    }
+
+    private boolean overBudget(int restocked, long timeLimit) {
+        if (maxRestocksPerTick > 0 && restocked >= maxRestocksPerTick) return true;
+        return timeLimit != 0L && restocked > 0 && System.nanoTime() >= timeLimit;
+    }
+
+    private void clearGroupBatches() {
+        for (RestockGroup group : restockingGroups) group.endBatch();
+        restockingGroups.clear();
+    }
+
+    // Containers parked because nobody was near them are due again as soon as a player comes in range.
+    // With gating turned off everything parked is released at once.
+    private void updateActivity() {
+        if (activationRange <= 0) {
+            if (!inactiveRestocks.isEmpty()) {
+                for (Map<Long, Set<RestockContainer>> worldInactive : inactiveRestocks.values()) {
+                    for (Set<RestockContainer> parked : worldInactive.values()) releaseInactive(parked);
                 }
+                inactiveRestocks.clear();
+                activityMap.clear();
             }
-        }, 20L, 20L);
+            return;
+        }
+
+        Map<String, Set<Long>> previous = activityMap.rebuild(getServer().getOnlinePlayers(), activationRange);
+        if (inactiveRestocks.isEmpty()) return;
+
+        for (Map.Entry<String, Set<Long>> entry : activityMap.getActive().entrySet()) {
+            Map<Long, Set<RestockContainer>> worldInactive = inactiveRestocks.get(entry.getKey());
+            if (worldInactive == null) continue;
+
+            Set<Long> wasActive = previous.get(entry.getKey());
+            for (Long chunk : entry.getValue()) {
+                if (wasActive != null && wasActive.contains(chunk)) continue;
+                Set<RestockContainer> parked = worldInactive.remove(chunk);
+                if (parked != null) releaseInactive(parked);
+            }
+            if (worldInactive.isEmpty()) inactiveRestocks.remove(entry.getKey());
+        }
+    }
+
+    // Parked containers restock once through the normal budgeted queue, however long they were frozen
+    private void releaseInactive(Set<RestockContainer> parked) {
+        for (RestockContainer container : parked) {
+            if (containers.get(container.getKey()) == container && !container.isScheduled()) {
+                restockQueue.schedule(container, currentTick);
+            }
+        }
+    }
+
+    // Counters are safe to read off-thread, only the sizes are captured here
+    private void dumpMetrics() {
+        final int total = containers.size();
+        final int scheduled = restockQueue.size();
+        final int pending = getPendingRestockCount();
+        final File file = new File(getDataFolder(), "metrics.csv");
+        getServer().getScheduler().scheduleAsyncDelayedTask(this, () -> {
+            try {
+                metrics.appendCsv(file, total, scheduled, pending);
+            } catch (IOException e) {
+                System.out.println(ChatColor.RED + "[ContainerUtils] Failed to write metrics: " + e.getMessage());
+            }
+        });
+    }
+
+    // Journals the deadline an automatic restock moved the container to, it goes out with the next batched flush.
+    // Without it a crash before the next snapshot leaves the old deadline on disk and the container restocks again on startup.
+    private void checkpointRestock(RestockContainer container) {
+        if (container.getGroup() != null) return;
+        journal.checkpoint(container.getKey(), getDueMillis(container, System.currentTimeMillis()));
+    }
+
+    // Never less than a tick, a deadline of currentTick would be polled again by the same tick's loop forever
+    private static long intervalTicks(int seconds) {
+        return Math.max(1L, seconds * 20L);
     }
 
-    private void autoRestockContainer(String key) {
-        String[] parts = key.split(":");
-        if (parts.length != 4) return;
+    // Grouped containers follow their group's deadline and are left alone
+    public void setRestockTimer(RestockContainer container, int seconds) {
+        checkMainThread();
+        if (container.getGroup() != null) return;
+        restockQueue.schedule(container, currentTick + intervalTicks(seconds));
+    }
+
+    public int getSecondsUntilRestock(RestockContainer container) {
+        return getSecondsUntilRestock(container.getGroup() != null ? container.getGroup() : container);
+    }
+
+    public int getSecondsUntilRestock(Scheduled entry) {
+        long deadline = entry.getDeadline();
+        if (deadline < 0) return 0;
+        return (int) Math.max(0L, (deadline - currentTick + 19L) / 20L);
+    }
+
+    // Returns false when the container was deferred or removed and should not be rescheduled
+    boolean autoRestockContainer(RestockContainer container) {
+        ContainerKey key = container.getKey();
+        if (activationRange > 0 && !activityMap.isActive(key)) {
+            parkInactive(container);
+            metrics.recordInactive();
+            return false;
+        }
 
         try {
-            String world = parts[0];
-            int x = Integer.parseInt(parts[1]);
-            int y = Integer.parseInt(parts[2]);
-            int z = Integer.parseInt(parts[3]);
-
-            Block block = getServer().getWorld(world).getBlockAt(x, y, z);
-            if (!isContainer(block)) {
-                containerTemplates.remove(key);
-                containerTimers.remove(key);
-                containerRestockTimes.remove(key);
-                return;
+            World world = getServer().getWorld(key.getWorldName());
+            if (world == null || !world.isChunkLoaded(key.getChunkX(), key.getChunkZ())) {
+                deferRestock(container);
+                metrics.recordDeferred();
+                return false;
             }
 
-            ItemStack[] template = containerTemplates.get(key);
-            if (template == null) return;
+            // Nobody opened it since the last restock, only make sure the block is still there
+            if (diffRestock && !container.isTouched() && isContainerType(world.getBlockTypeIdAt(key.getX(), key.getY(), key.getZ()))) {
+                metrics.recordSkipped();
+                return true;
+            }
+
+            return restockBlock(container, world.getBlockAt(key.getX(), key.getY(), key.getZ()));
+        } catch (Exception e) {
+            System.out.println(ChatColor.RED + "[ContainerUtils] Error auto-restocking container: " + e.getMessage());
+        }
+        return true;
+    }
+
+    private boolean restockBlock(RestockContainer container, Block block) {
+        InventoryAdapter adapter = inventoryAdapters.get(block);
+        if (adapter == null) {
+            removeContainer(container);
+            metrics.recordRemoved();
+            return false;
+        }
+
+        ContainerInventory inv = adapter.getInventory(block);
+        if (inv == null) return true;
 
-            Inventory inv = getInventoryFromState(block.getState());
-            if (inv == null) return;
+        fillContainer(inv, container);
+        // A double chest whose other half sits in an unloaded chunk only got its own half, it stays touched so the
+        // other half is filled by a later cycle
+        settleTouched(container, adapter.isAlwaysTouched() || inv.getSize() < container.getTemplate().getSize());
+        metrics.recordRestock();
 
-            inv.clear();
-            for (int i = 0; i < template.length && i < inv.getSize(); i++) {
+        if (announceRestock) announcer.announce(container.getKey(), currentTick);
+        return true;
+    }
+
+    // Containers with a loot table get a fresh roll, a table missing from the config falls back to the template
+    private void fillContainer(ContainerInventory inv, RestockContainer container) {
+        String tableName = container.getLootTable();
+        LootTable table = tableName != null ? lootTables.get(tableName) : null;
+        if (table != null) {
+            fillInventory(inv, table.roll(inv.getSize()), false);
+        } else {
+            fillInventory(inv, container.getTemplate().getItems(), true);
+        }
+    }
+
+    // In diff mode only slots that differ from the template are written.
+    // Slots past the template are left alone, a chest registered before it became a double chest keeps to its own half.
+    // Shared template stacks are cloned before they go in, freshly rolled loot goes in as it is.
+    private void fillInventory(ContainerInventory inv, ItemStack[] template, boolean shared) {
+        int size = Math.min(inv.getSize(), template.length);
+        if (!diffRestock) {
+            for (int i = 0; i < size; i++) {
                 if (template[i] != null) {
-                    inv.setItem(i, template[i].clone());
+                    inv.setItem(i, shared ? template[i].clone() : template[i]);
+                } else {
+                    inv.clear(i);
                 }
             }
+            return;
+        }
 
-            if (announceRestock) {
-                for (Player p : getServer().getOnlinePlayers()) {
-                    if (p.getWorld().getName().equals(world) &&
-                            p.getLocation().distance(block.getLocation()) <= 10) {
-                        p.sendMessage(ChatColor.GRAY + "Container auto-restocked nearby.");
-                    }
-                }
+        for (int i = 0; i < size; i++) {
+            ItemStack wanted = template[i];
+            ItemStack current = inv.getItem(i);
+            boolean empty = current == null || current.getType() == Material.AIR || current.getAmount() <= 0;
+
+            if (wanted == null) {
+                if (!empty) inv.clear(i);
+            } else if (empty || !RestockTemplate.sameStack(current, wanted)) {
+                inv.setItem(i, shared ? wanted.clone() : wanted);
             }
+        }
+    }
 
-        } catch (Exception e) {
-            System.out.println(ChatColor.RED + "[ContainerUtils] Error auto-restocking container: " + e.getMessage());
+    private boolean isAlwaysTouched(Block block) {
+        InventoryAdapter adapter = inventoryAdapters.get(block);
+        return adapter != null && adapter.isAlwaysTouched();
+    }
+
+    boolean isContainerType(int typeId) {
+        return inventoryAdapters.get(typeId) != null;
+    }
+
+    // Restocking a furnace resets whatever players are smelting in it, region scans leave furnaces alone unless
+    // region-include-furnaces is on. Punching one in create mode still registers it.
+    boolean isRegionScanType(int typeId) {
+        if (typeId == Material.FURNACE.getId() || typeId == Material.BURNING_FURNACE.getId()) return regionIncludeFurnaces;
+        return isContainerType(typeId);
+    }
+
+    // Register adapters here to restock more block types
+    public InventoryAdapters getInventoryAdapters() {
+        return inventoryAdapters;
+    }
+
+    // Marks both halves of a double chest, older registrations keep them as two containers and either window shows both
+    public void markTouched(Block block) {
+        if (!isChunkRegistered(block)) return;
+        markOpened(containers.get(ContainerKey.of(block)));
+
+        InventoryAdapter adapter = inventoryAdapters.get(block);
+        Block partner = adapter != null ? adapter.getPartner(block) : null;
+        if (partner != null) markOpened(containers.get(ContainerKey.of(partner)));
+    }
+
+    private void markOpened(RestockContainer container) {
+        if (container != null) container.markOpened(currentTick);
+    }
+
+    // Beta has no close event, a window opened shortly before the restock may still be open and anything taken
+    // out of it afterwards would go unseen, so the container stays touched until the grace period is over
+    private void settleTouched(RestockContainer container, boolean alwaysTouched) {
+        long openedTick = container.getOpenedTick();
+        container.setTouched(alwaysTouched
+                || (openedTick != Long.MIN_VALUE && currentTick - openedTick < touchGraceSeconds * 20L));
+    }
+
+    // Replaces any container at the same position, package-private for the benchmarks
+    void addContainer(RestockContainer container, int timerSeconds) {
+        putContainer(container);
+        setRestockTimer(container, timerSeconds);
+    }
+
+    private void putContainer(RestockContainer container) {
+        checkMainThread();
+        RestockContainer previous = containers.put(container.getKey(), container);
+        if (previous == null) {
+            chunkIndex.add(container.getKey());
+        } else if (previous != container) {
+            restockQueue.cancel(previous);
+            if (previous.getGroup() != null) previous.getGroup().remove(previous);
         }
     }
 
-    private Inventory getInventoryFromState(BlockState state) {
-        if (state instanceof Chest) return ((Chest) state).getInventory();
-        if (state instanceof Dispenser) return ((Dispenser) state).getInventory();
-        return null;
+    public void removeContainer(RestockContainer container) {
+        checkMainThread();
+        restockQueue.cancel(container);
+        unpark(container);
+        if (containers.remove(container.getKey(), container)) {
+            chunkIndex.remove(container.getKey());
+            if (container.getGroup() != null) container.getGroup().remove(container);
+            journal.unregister(container.getKey());
+            requestSave();
+        }
+    }
+
+    private void deferRestock(RestockContainer container) {
+        ContainerKey key = container.getKey();
+        pendingChunkRestocks
+                .computeIfAbsent(key.getWorldName(), w -> new HashMap<>())
+                .computeIfAbsent(key.getChunkKey(), c -> new HashSet<>())
+                .add(container);
     }
 
-    public String getLocationKey(Block block) {
-        return block.getWorld().getName() + ":" + block.getX() + ":" + block.getY() + ":" + block.getZ();
+    // A container restocked by hand or removed no longer waits for its chunk or a player
+    private void unpark(RestockContainer container) {
+        ContainerKey key = container.getKey();
+        removeParked(pendingChunkRestocks, key, container);
+        removeParked(inactiveRestocks, key, container);
+    }
+
+    private static void removeParked(Map<String, Map<Long, Set<RestockContainer>>> parked, ContainerKey key, RestockContainer container) {
+        if (parked.isEmpty()) return;
+        Map<Long, Set<RestockContainer>> worldParked = parked.get(key.getWorldName());
+        if (worldParked == null) return;
+        Set<RestockContainer> set = worldParked.get(key.getChunkKey());
+        if (set == null || !set.remove(container)) return;
+        if (set.isEmpty()) {
+            worldParked.remove(key.getChunkKey());
+            if (worldParked.isEmpty()) parked.remove(key.getWorldName());
+        }
+    }
+
+    private void parkInactive(RestockContainer container) {
+        ContainerKey key = container.getKey();
+        inactiveRestocks
+                .computeIfAbsent(key.getWorldName(), w -> new HashMap<>())
+                .computeIfAbsent(key.getChunkKey(), c -> new HashSet<>())
+                .add(container);
+    }
+
+    // Called from ChunkLoadEvent, restocks everything that came due while the chunk was unloaded
+    public void restockPendingChunk(Chunk chunk) {
+        if (pendingChunkRestocks.isEmpty()) return;
+
+        World world = chunk.getWorld();
+        Map<Long, Set<RestockContainer>> worldPending = pendingChunkRestocks.get(world.getName());
+        if (worldPending == null) return;
+
+        Set<RestockContainer> pending = worldPending.remove(ContainerKey.chunkKey(chunk.getX(), chunk.getZ()));
+        if (worldPending.isEmpty()) pendingChunkRestocks.remove(world.getName());
+        if (pending == null) return;
+
+        for (RestockContainer container : pending) {
+            ContainerKey key = container.getKey();
+            if (containers.get(key) != container) continue;
+
+            boolean keep = true;
+            metrics.recordChunkRestock();
+            try {
+                keep = restockBlock(container, world.getBlockAt(key.getX(), key.getY(), key.getZ()));
+            } catch (Exception e) {
+                System.out.println(ChatColor.RED + "[ContainerUtils] Error restocking pending container: " + e.getMessage());
+            }
+
+            if (keep) {
+                setRestockTimer(container, container.getRestockTime());
+                checkpointRestock(container);
+            }
+        }
+        requestSave();
+        announcer.flush();
+    }
+
+    public RestockGroup getGroup(String name) {
+        return groups.get(name.toLowerCase());
+    }
+
+    // Read-only. The map itself is safe to read from any thread, the groups and their members are server thread only.
+    public Collection<RestockGroup> getGroups() {
+        return Collections.unmodifiableCollection(groups.values());
+    }
+
+    public boolean createGroup(String name, int seconds) {
+        checkMainThread();
+        String key = name.toLowerCase();
+        if (groups.containsKey(key)) return false;
+
+        RestockGroup group = new RestockGroup(key, seconds);
+        groups.put(key, group);
+        groupQueue.schedule(group, currentTick + intervalTicks(seconds));
+        journalGroup(group);
+        requestSave();
+        return true;
+    }
+
+    // Members go back to their own schedule, starting a full interval from now
+    public void deleteGroup(RestockGroup group) {
+        checkMainThread();
+        for (RestockContainer member : group.getMembers()) {
+            member.setGroup(null);
+            setRestockTimer(member, member.getRestockTime());
+            journal.member(member.getKey(), null);
+            journal.checkpoint(member.getKey(), getDueMillis(member, System.currentTimeMillis()));
+        }
+        group.clearMembers();
+        groupQueue.cancel(group);
+        group.endBatch();
+        restockingGroups.remove(group);
+        groups.remove(group.getName());
+        journal.deleteGroup(group.getName());
+        requestSave();
+    }
+
+    public void addToGroup(RestockContainer container, RestockGroup group) {
+        checkMainThread();
+        if (container.getGroup() == group) return;
+        if (container.getGroup() != null) container.getGroup().remove(container);
+
+        restockQueue.cancel(container);
+        group.add(container);
+        container.setGroup(group);
+        journal.member(container.getKey(), group.getName());
+        requestSave();
+    }
+
+    public void removeFromGroup(RestockContainer container) {
+        checkMainThread();
+        RestockGroup group = container.getGroup();
+        if (group == null) return;
+
+        group.remove(container);
+        container.setGroup(null);
+        setRestockTimer(container, container.getRestockTime());
+        journal.member(container.getKey(), null);
+        journal.checkpoint(container.getKey(), getDueMillis(container, System.currentTimeMillis()));
+        requestSave();
+    }
+
+    public void setGroupRestockTime(RestockGroup group, int seconds) {
+        checkMainThread();
+        group.setRestockTime(seconds);
+        groupQueue.schedule(group, currentTick + intervalTicks(seconds));
+        journalGroup(group);
+        requestSave();
+    }
+
+    // Starts a restock of the whole group, handed out under the restock budget from the next tick, and starts its
+    // interval over. Returns the number of members.
+    public int resetGroup(RestockGroup group) {
+        checkMainThread();
+        if (!group.isRestocking()) restockingGroups.add(group);
+        group.startBatch();
+        groupQueue.schedule(group, currentTick + intervalTicks(group.getRestockTime()));
+        journalGroup(group);
+        requestSave();
+        return group.size();
+    }
+
+    public RestockMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getScheduledRestockCount() {
+        return restockQueue.size();
+    }
+
+    public int getPendingRestockCount() {
+        return countParked(pendingChunkRestocks);
+    }
+
+    public int getInactiveRestockCount() {
+        return countParked(inactiveRestocks);
+    }
+
+    private static int countParked(Map<String, Map<Long, Set<RestockContainer>>> parked) {
+        int count = 0;
+        for (Map<Long, Set<RestockContainer>> worldParked : parked.values()) {
+            for (Set<RestockContainer> set : worldParked.values()) count += set.size();
+        }
+        return count;
+    }
+
+    // The inventory of the container registered (or about to be) under key, read from whichever half was punched
+    private ContainerInventory getInventory(Block block, ContainerKey key) {
+        InventoryAdapter adapter = inventoryAdapters.get(block);
+        if (adapter == null) return null;
+        if (!key.equals(ContainerKey.of(block))) {
+            Block partner = adapter.getPartner(block);
+            if (partner != null) block = partner;
+        }
+        return adapter.getInventory(block);
+    }
+
+    // Either half of a double chest maps to the half that is registered, an unregistered one to the block itself
+    public ContainerKey getLocationKey(Block block) {
+        ContainerKey key = ContainerKey.of(block);
+        if (containers.containsKey(key)) return key;
+
+        InventoryAdapter adapter = inventoryAdapters.get(block);
+        Block partner = adapter != null ? adapter.getPartner(block) : null;
+        if (partner == null) return key;
+        ContainerKey partnerKey = ContainerKey.of(partner);
+        return containers.containsKey(partnerKey) ? partnerKey : key;
+    }
+
+    // Double chests registered as two halves before they were one container lose the half that isn't key
+    private void removeOtherHalf(Block block, ContainerKey key) {
+        InventoryAdapter adapter = inventoryAdapters.get(block);
+        Block partner = adapter != null ? adapter.getPartner(block) : null;
+        if (partner == null) return;
+
+        ContainerKey own = ContainerKey.of(block);
+        RestockContainer other = containers.get(key.equals(own) ? ContainerKey.of(partner) : own);
+        if (other != null) removeContainer(other);
     }
 
     private int getInt(String key, int def) {
@@ -330,6 +1249,17 @@ public class ContainerUtils extends JavaPlugin {
         return def;
     }
 
+    private double getDouble(String key, double def) {
+        Object value = config.get(key);
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException ignored) {}
+        }
+        return def;
+    }
+
     public boolean getBoolean(String key, boolean def) {
         Object value = config.get(key);
         if (value instanceof Boolean) return (Boolean) value;
@@ -337,12 +1267,44 @@ public class ContainerUtils extends JavaPlugin {
         return def;
     }
 
-    public Map<String, ItemStack[]> getContainerTemplates() {
-        return containerTemplates;
+    // Server thread only. False means no container in the block's chunk is registered.
+    public boolean isChunkRegistered(Block block) {
+        String worldName = block.getWorld().getName();
+        if (chunkIndex.contains(worldName, block.getX() >> 4, block.getZ() >> 4)) return true;
+
+        // The registered half of a double chest can sit across a chunk border
+        int localX = block.getX() & 15;
+        int localZ = block.getZ() & 15;
+        if (localX != 0 && localX != 15 && localZ != 0 && localZ != 15) return false;
+        InventoryAdapter adapter = inventoryAdapters.get(block);
+        Block partner = adapter != null ? adapter.getPartner(block) : null;
+        return partner != null && chunkIndex.contains(worldName, partner.getX() >> 4, partner.getZ() >> 4);
+    }
+
+    // Whether a command left the player in a mode where punching any container means something
+    public boolean hasPendingAction(UUID player) {
+        return createModePlayers.contains(player)
+                || pendingRestockTimes.containsKey(player)
+                || pendingTemplateNames.containsKey(player)
+                || templateApplyPlayers.containsKey(player)
+                || lootAssignPlayers.containsKey(player)
+                || groupAssignPlayers.containsKey(player);
+    }
+
+    // Read-only, safe to read from any thread
+    public Map<ContainerKey, RestockContainer> getContainers() {
+        return containersView;
+    }
+
+    private void checkMainThread() {
+        Thread main = mainThread;
+        if (main != null && Thread.currentThread() != main) {
+            throw new IllegalStateException("ContainerUtils registry can only be modified from the server thread");
+        }
     }
 
-    public Map<String, Integer> getContainerTimers() {
-        return containerTimers;
+    public RestockContainer getContainer(ContainerKey key) {
+        return containers.get(key);
     }
 
     public int getDefaultRestockTime() {
@@ -350,7 +1312,7 @@ public class ContainerUtils extends JavaPlugin {
     }
 
     public void setDefaultRestockTime(int time) {
-        this.defaultRestockTime = time;
+        this.defaultRestockTime = Math.max(1, time);
         config.put("default-restock-time", time);
         saveConfigFile();
     }
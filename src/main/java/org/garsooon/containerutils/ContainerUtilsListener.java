@@ -1,12 +1,14 @@
 package org.garsooon.containerutils;
 
-import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
 import org.bukkit.ChatColor;
 
 public class ContainerUtilsListener implements Listener {
@@ -17,27 +19,48 @@ public class ContainerUtilsListener implements Listener {
         this.plugin = plugin;
     }
 
-    @EventHandler
+    // Runs after protection plugins had their say, a punch they cancelled is not ours to handle
+    @EventHandler(priority = Event.Priority.High, ignoreCancelled = true)
     public void onPlayerInteract(PlayerInteractEvent event) {
+        if (event.getAction() == Action.RIGHT_CLICK_BLOCK) {
+            Block opened = event.getClickedBlock();
+            if (opened != null && plugin.isContainer(opened)) plugin.markTouched(opened);
+            return;
+        }
         if (event.getAction() != Action.LEFT_CLICK_BLOCK) return;
 
         Block block = event.getClickedBlock();
-        if (block == null || !isContainer(block)) return;
+        if (block == null) return;
 
         Player player = event.getPlayer();
-        String locationKey = plugin.getLocationKey(block);
+        if (!plugin.regionSelectPlayers.isEmpty() && plugin.regionSelectPlayers.contains(player.getUniqueId())) {
+            selectRegionCorner(player, block);
+            event.setCancelled(true);
+            return;
+        }
+
+        if (!plugin.isContainer(block)) return;
+        // Cheap reject before building a key or asking the permissions plugin
+        if (!plugin.isChunkRegistered(block) && !plugin.hasPendingAction(player.getUniqueId())) return;
+
+        ContainerKey locationKey = plugin.getLocationKey(block);
 
         if (plugin.pendingRestockTimes.containsKey(player.getUniqueId())) {
             int seconds = plugin.pendingRestockTimes.remove(player.getUniqueId());
 
-            if (!plugin.getContainerTemplates().containsKey(locationKey)) {
+            RestockContainer container = plugin.getContainer(locationKey);
+            if (container == null) {
                 player.sendMessage(ChatColor.RED + "This container is not registered.");
                 return;
             }
 
-            plugin.containerRestockTimes.put(locationKey, seconds);
-            plugin.containerTimers.put(locationKey, seconds);
-            plugin.saveRestockData();
+            if (container.getGroup() != null) {
+                player.sendMessage(ChatColor.RED + "This container restocks with group '" + container.getGroup().getName()
+                        + "'. Use /restock group time instead.");
+                return;
+            }
+
+            plugin.setContainerRestockTime(container, seconds);
 
             player.sendMessage(ChatColor.GREEN + "Restock time for this container set to " + seconds + " seconds.");
             event.setCancelled(true);
@@ -49,6 +72,79 @@ public class ContainerUtilsListener implements Listener {
             return;
         }
 
+        if (plugin.pendingTemplateNames.containsKey(player.getUniqueId())) {
+            String name = plugin.pendingTemplateNames.remove(player.getUniqueId());
+
+            RestockContainer container = plugin.getContainer(locationKey);
+            if (container == null) {
+                player.sendMessage(ChatColor.RED + "This container is not registered.");
+                return;
+            }
+
+            plugin.nameTemplate(name, container.getTemplate());
+
+            player.sendMessage(ChatColor.GREEN + "Saved this container's contents as template '" + name + "'.");
+            event.setCancelled(true);
+            return;
+        }
+
+        if (plugin.templateApplyPlayers.containsKey(player.getUniqueId())) {
+            String name = plugin.templateApplyPlayers.get(player.getUniqueId());
+            RestockTemplate template = plugin.templatePool.getNamed(name);
+            if (template == null) {
+                plugin.templateApplyPlayers.remove(player.getUniqueId());
+                player.sendMessage(ChatColor.RED + "Template '" + name + "' no longer exists.");
+                return;
+            }
+
+            plugin.applyTemplate(block, template, player);
+            player.sendMessage(ChatColor.GREEN + "Applied template '" + name + "'. Use /restock template stop when done.");
+            event.setCancelled(true);
+            return;
+        }
+
+        if (plugin.lootAssignPlayers.containsKey(player.getUniqueId())) {
+            String name = plugin.lootAssignPlayers.get(player.getUniqueId());
+            if (name.isEmpty()) {
+                plugin.assignLootTable(block, null, player);
+                player.sendMessage(ChatColor.GREEN + "Removed the loot table. Use /restock loot stop when done.");
+            } else if (plugin.getLootTable(name) == null) {
+                plugin.lootAssignPlayers.remove(player.getUniqueId());
+                player.sendMessage(ChatColor.RED + "Loot table '" + name + "' no longer exists.");
+                return;
+            } else {
+                plugin.assignLootTable(block, name, player);
+                player.sendMessage(ChatColor.GREEN + "Assigned loot table '" + name + "'. Use /restock loot stop when done.");
+            }
+            event.setCancelled(true);
+            return;
+        }
+
+        if (plugin.groupAssignPlayers.containsKey(player.getUniqueId())) {
+            String name = plugin.groupAssignPlayers.get(player.getUniqueId());
+            RestockContainer container = plugin.getContainer(locationKey);
+            if (container == null) {
+                player.sendMessage(ChatColor.RED + "This container is not registered.");
+                return;
+            }
+
+            if (name.isEmpty()) {
+                plugin.removeFromGroup(container);
+                player.sendMessage(ChatColor.GREEN + "Container removed from its group. Use /restock group stop when done.");
+            } else {
+                RestockGroup group = plugin.getGroup(name);
+                if (group == null) {
+                    plugin.groupAssignPlayers.remove(player.getUniqueId());
+                    player.sendMessage(ChatColor.RED + "Group '" + name + "' no longer exists.");
+                    return;
+                }
+                plugin.addToGroup(container, group);
+                player.sendMessage(ChatColor.GREEN + "Added to group '" + name + "' (" + group.size() + " containers). Use /restock group stop when done.");
+            }
+            event.setCancelled(true);
+            return;
+        }
+
         boolean allowRegistration = plugin.getBoolean("allow-player-registration", true);
         if (!allowRegistration && !player.hasPermission("containerutils.admin")) {
             player.sendMessage(ChatColor.RED + "Container registration is disabled for players.");
@@ -62,14 +158,37 @@ public class ContainerUtilsListener implements Listener {
             return;
         }
 
-        if (plugin.getContainerTemplates().containsKey(locationKey)) {
+        if (plugin.getContainers().containsKey(locationKey)) {
             plugin.restockContainer(block, player);
             event.setCancelled(true);
         }
     }
 
-    private boolean isContainer(Block block) {
-        Material material = block.getType();
-        return material == Material.CHEST || material == Material.DISPENSER;
+    private void selectRegionCorner(Player player, Block block) {
+        ContainerKey corner = ContainerKey.of(block);
+        ContainerKey first = plugin.regionFirstCorners.remove(player.getUniqueId());
+        if (first == null) {
+            plugin.regionFirstCorners.put(player.getUniqueId(), corner);
+            player.sendMessage(ChatColor.YELLOW + "First corner set at " + corner + ". Punch the second corner.");
+            return;
+        }
+
+        plugin.regionSelectPlayers.remove(player.getUniqueId());
+        if (first.getWorldId() != corner.getWorldId()) {
+            player.sendMessage(ChatColor.RED + "Both corners must be in the same world.");
+            return;
+        }
+        plugin.startRegionRegistration(player, block.getWorld(), first.getX(), first.getY(), first.getZ(),
+                corner.getX(), corner.getY(), corner.getZ());
+    }
+
+    @EventHandler(priority = Event.Priority.Monitor, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        if (plugin.isContainer(event.getBlock())) plugin.markTouched(event.getBlock());
+    }
+
+    @EventHandler(priority = Event.Priority.Monitor)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        plugin.restockPendingChunk(event.getChunk());
     }
 }
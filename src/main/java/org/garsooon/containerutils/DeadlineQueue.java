@@ -0,0 +1,108 @@
+package org.garsooon.containerutils;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of containers or groups ordered by their absolute tick deadline.
+ * Each entry stores its own heap index, so polling only touches entries that are due
+ * and rescheduling or cancelling is O(log n) without any extra lookup. Not thread-safe, server thread only.
+ */
+public class DeadlineQueue<T extends Scheduled> {
+
+    private Scheduled[] heap = new Scheduled[64];
+    private int size;
+
+    public void schedule(T entry, long deadline) {
+        int pos = entry.queueIndex;
+        if (pos >= 0) {
+            long old = entry.deadline;
+            entry.deadline = deadline;
+            if (deadline < old) siftUp(pos, entry);
+            else siftDown(pos, entry);
+            return;
+        }
+
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        entry.deadline = deadline;
+        siftUp(size++, entry);
+    }
+
+    public boolean cancel(T entry) {
+        int pos = entry.queueIndex;
+        if (pos < 0) return false;
+        removeAt(pos);
+        return true;
+    }
+
+    /** Returns the earliest deadline, or Long.MAX_VALUE when the queue is empty. */
+    public long peekDeadline() {
+        return size > 0 ? heap[0].deadline : Long.MAX_VALUE;
+    }
+
+    /** Removes and returns the earliest entry if its deadline is at or before now, otherwise null. */
+    @SuppressWarnings("unchecked")
+    public T pollDue(long now) {
+        if (size == 0 || heap[0].deadline > now) return null;
+        T entry = (T) heap[0];
+        removeAt(0);
+        return entry;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            heap[i].queueIndex = -1;
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    private void removeAt(int pos) {
+        Scheduled removed = heap[pos];
+        removed.queueIndex = -1;
+
+        int last = --size;
+        Scheduled moved = heap[last];
+        heap[last] = null;
+        if (pos != last) {
+            siftDown(pos, moved);
+            if (heap[pos] == moved) siftUp(pos, moved);
+        }
+    }
+
+    private void siftUp(int pos, Scheduled entry) {
+        long deadline = entry.deadline;
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            Scheduled p = heap[parent];
+            if (p.deadline <= deadline) break;
+            heap[pos] = p;
+            p.queueIndex = pos;
+            pos = parent;
+        }
+        heap[pos] = entry;
+        entry.queueIndex = pos;
+    }
+
+    private void siftDown(int pos, Scheduled entry) {
+        long deadline = entry.deadline;
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && heap[right].deadline < heap[child].deadline) child = right;
+            Scheduled c = heap[child];
+            if (deadline <= c.deadline) break;
+            heap[pos] = c;
+            c.queueIndex = pos;
+            pos = child;
+        }
+        heap[pos] = entry;
+        entry.queueIndex = pos;
+    }
+}
@@ -0,0 +1,18 @@
+package org.garsooon.containerutils;
+
+/**
+ * Immutable copy of a group's persisted state, members record their group by name.
+ */
+final class GroupSnapshot {
+
+    final String name;
+    final int restockTime;
+    // Wall-clock time of the next group restock in epoch millis
+    final long due;
+
+    GroupSnapshot(String name, int restockTime, long due) {
+        this.name = name;
+        this.restockTime = Math.max(1, restockTime);
+        this.due = due;
+    }
+}
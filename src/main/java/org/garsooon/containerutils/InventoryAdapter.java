@@ -0,0 +1,18 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.block.Block;
+
+/**
+ * Reads the inventory behind one kind of container block, registered per Material in InventoryAdapters.
+ */
+public interface InventoryAdapter {
+
+    // Null when the block has no inventory to read
+    ContainerInventory getInventory(Block block);
+
+    // The other block of a container that spans two blocks, null otherwise
+    Block getPartner(Block block);
+
+    // Containers whose contents change without a player opening them, they are diffed on every restock
+    boolean isAlwaysTouched();
+}
@@ -0,0 +1,43 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+
+/**
+ * Which block types are containers and how to reach their inventory, looked up by type id in an array.
+ * Other plugins can register adapters for more types, server thread only.
+ */
+public final class InventoryAdapters {
+
+    private InventoryAdapter[] byId = new InventoryAdapter[256];
+
+    public static InventoryAdapters defaults() {
+        InventoryAdapters adapters = new InventoryAdapters();
+        adapters.register(Material.CHEST, new ChestAdapter());
+        // Dispensers empty themselves from redstone and furnaces smelt, neither needs a player to change
+        adapters.register(Material.DISPENSER, new BlockStateAdapter(true));
+        InventoryAdapter furnace = new BlockStateAdapter(true);
+        adapters.register(Material.FURNACE, furnace);
+        adapters.register(Material.BURNING_FURNACE, furnace);
+        return adapters;
+    }
+
+    // A null adapter stops treating the type as a container
+    public void register(Material material, InventoryAdapter adapter) {
+        int id = material.getId();
+        if (id >= byId.length) {
+            InventoryAdapter[] grown = new InventoryAdapter[id + 1];
+            System.arraycopy(byId, 0, grown, 0, byId.length);
+            byId = grown;
+        }
+        byId[id] = adapter;
+    }
+
+    public InventoryAdapter get(int typeId) {
+        return typeId >= 0 && typeId < byId.length ? byId[typeId] : null;
+    }
+
+    public InventoryAdapter get(Block block) {
+        return get(block.getTypeId());
+    }
+}
@@ -0,0 +1,185 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Named weighted loot table from the loot-tables section of config.yml.
+ * Entries are picked through a Vose alias table, so a pick costs one random int and one random double
+ * no matter how many entries the table has. Immutable once built, a reload swaps in new tables.
+ */
+public final class LootTable {
+
+    private final String name;
+    private final int minRolls;
+    private final int maxRolls;
+
+    // One slot per entry
+    private final int[] typeIds;
+    private final short[] durabilities;
+    private final int[] minAmounts;
+    private final int[] maxAmounts;
+
+    private final double[] probability;
+    private final int[] alias;
+
+    private LootTable(String name, int minRolls, int maxRolls, int[] typeIds, short[] durabilities,
+                      int[] minAmounts, int[] maxAmounts, double[] weights) {
+        this.name = name;
+        this.minRolls = minRolls;
+        this.maxRolls = maxRolls;
+        this.typeIds = typeIds;
+        this.durabilities = durabilities;
+        this.minAmounts = minAmounts;
+        this.maxAmounts = maxAmounts;
+        this.probability = new double[weights.length];
+        this.alias = new int[weights.length];
+        buildAlias(weights);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getEntryCount() {
+        return typeIds.length;
+    }
+
+    public String getRollRange() {
+        return minRolls == maxRolls ? String.valueOf(minRolls) : minRolls + "-" + maxRolls;
+    }
+
+    // Rolls the table into a fresh inventory layout, each roll lands in a random free slot
+    public ItemStack[] roll(int size) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ItemStack[] slots = new ItemStack[size];
+        if (size == 0) return slots;
+
+        int rolls = between(random, minRolls, maxRolls);
+        for (int r = 0; r < rolls && r < size; r++) {
+            int column = random.nextInt(typeIds.length);
+            int entry = random.nextDouble() < probability[column] ? column : alias[column];
+
+            int slot = random.nextInt(size);
+            while (slots[slot] != null) slot = slot + 1 == size ? 0 : slot + 1;
+            slots[slot] = new ItemStack(typeIds[entry], between(random, minAmounts[entry], maxAmounts[entry]), durabilities[entry]);
+        }
+        return slots;
+    }
+
+    private static int between(ThreadLocalRandom random, int min, int max) {
+        return min == max ? min : min + random.nextInt(max - min + 1);
+    }
+
+    // Vose's alias method, splits the scaled weights into columns of height 1 holding at most two entries
+    private void buildAlias(double[] weights) {
+        int n = weights.length;
+        double total = 0.0;
+        for (double weight : weights) total += weight;
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // Whatever is left is 1 up to rounding error
+        while (largeCount > 0) probability[large[--largeCount]] = 1.0;
+        while (smallCount > 0) probability[small[--smallCount]] = 1.0;
+    }
+
+    // Parses one table, for example:
+    //   rolls: 2-4
+    //   entries:
+    //     - {type: DIAMOND, weight: 1, amount: 1-2}
+    //     - {type: BREAD, weight: 10, amount: 1-5}
+    @SuppressWarnings("unchecked")
+    public static LootTable parse(String name, Object raw) {
+        if (!(raw instanceof Map)) throw new IllegalArgumentException("not a map");
+        Map<String, Object> section = (Map<String, Object>) raw;
+
+        int[] rolls = parseRange(section.get("rolls"), 1);
+        Object entrySection = section.get("entries");
+        if (!(entrySection instanceof List) || ((List<Object>) entrySection).isEmpty()) {
+            throw new IllegalArgumentException("no entries");
+        }
+
+        List<Object> entries = (List<Object>) entrySection;
+        int n = entries.size();
+        int[] typeIds = new int[n];
+        short[] durabilities = new short[n];
+        int[] minAmounts = new int[n];
+        int[] maxAmounts = new int[n];
+        double[] weights = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            if (!(entries.get(i) instanceof Map)) throw new IllegalArgumentException("entry " + (i + 1) + " is not a map");
+            Map<String, Object> entry = (Map<String, Object>) entries.get(i);
+
+            Object type = entry.get("type");
+            Material material = type == null ? null : MaterialTable.byName(type.toString());
+            if (material == null || material == Material.AIR) {
+                throw new IllegalArgumentException("unknown item type '" + type + "'");
+            }
+            typeIds[i] = material.getId();
+
+            Object durability = entry.get("durability");
+            durabilities[i] = durability instanceof Number ? ((Number) durability).shortValue() : 0;
+
+            int[] amount = parseRange(entry.get("amount"), 1);
+            minAmounts[i] = Math.max(1, amount[0]);
+            maxAmounts[i] = Math.max(minAmounts[i], amount[1]);
+
+            Object weight = entry.get("weight");
+            weights[i] = weight instanceof Number ? ((Number) weight).doubleValue() : 1.0;
+            if (!(weights[i] > 0.0)) throw new IllegalArgumentException("entry " + (i + 1) + " needs a positive weight");
+        }
+
+        return new LootTable(name, Math.max(0, rolls[0]), Math.max(Math.max(0, rolls[0]), rolls[1]),
+                typeIds, durabilities, minAmounts, maxAmounts, weights);
+    }
+
+    // Accepts a plain number or "min-max"
+    private static int[] parseRange(Object value, int def) {
+        if (value == null) return new int[]{def, def};
+        if (value instanceof Number) {
+            int n = ((Number) value).intValue();
+            return new int[]{n, n};
+        }
+
+        String text = value.toString().trim();
+        int dash = text.indexOf('-', 1);
+        try {
+            if (dash < 0) {
+                int n = Integer.parseInt(text);
+                return new int[]{n, n};
+            }
+            return new int[]{Integer.parseInt(text.substring(0, dash).trim()), Integer.parseInt(text.substring(dash + 1).trim())};
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid range '" + text + "'");
+        }
+    }
+}
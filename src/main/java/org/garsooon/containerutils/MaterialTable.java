@@ -0,0 +1,52 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.Material;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Name and id lookups for Material, built once so loading a big registry doesn't normalize every item name.
+ * Accepts the enum name, the forgiving forms Material.matchMaterial takes ("iron ingot", "iron-ingot") and numeric ids.
+ */
+public final class MaterialTable {
+
+    private static final Map<String, Material> BY_NAME = new HashMap<>();
+    private static final Material[] BY_ID;
+
+    static {
+        int maxId = 0;
+        for (Material material : Material.values()) {
+            BY_NAME.put(material.name(), material);
+            maxId = Math.max(maxId, material.getId());
+        }
+        BY_ID = new Material[maxId + 1];
+        for (Material material : Material.values()) {
+            if (material.getId() >= 0) BY_ID[material.getId()] = material;
+        }
+    }
+
+    private MaterialTable() {
+    }
+
+    // Returns null for names that match nothing
+    public static Material byName(String name) {
+        if (name == null) return null;
+        Material material = BY_NAME.get(name);
+        if (material != null) return material;
+
+        String normalized = name.trim().toUpperCase().replace(' ', '_').replace('-', '_');
+        material = BY_NAME.get(normalized);
+        if (material != null) return material;
+
+        try {
+            return byId(Integer.parseInt(normalized));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static Material byId(int id) {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+}
@@ -0,0 +1,112 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.ChatColor;
+import org.bukkit.World;
+import org.bukkit.block.BlockState;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Registers every container inside a cuboid, a few chunks per tick under a time budget.
+ * Containers are found through the tile entities of loaded chunks, unloaded chunks are skipped and reported.
+ */
+public class RegionRegistration implements Runnable {
+
+    private static final long PROGRESS_INTERVAL_NANOS = 5000000000L;
+    // 256 x 256 chunks, a 4096 block square
+    public static final long MAX_CHUNKS = 65536L;
+
+    private final ContainerUtils plugin;
+    private final CommandSender sender;
+    private final World world;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+    private final int minChunkX, minChunkZ, chunksWide, chunkCount;
+    private final long budgetNanos;
+
+    private int taskId = -1;
+    private int nextChunk = 0;
+    private int registered = 0;
+    private int alreadyRegistered = 0;
+    private int unloadedChunks = 0;
+    private long lastProgress = System.nanoTime();
+
+    // Corners are taken as typed, a ContainerKey would wrap y above 2047 and x/z past its 26 bits
+    public RegionRegistration(ContainerUtils plugin, CommandSender sender, World world, int x1, int y1, int z1, int x2, int y2, int z2,
+                              long budgetNanos) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.world = world;
+        this.minX = Math.min(x1, x2);
+        this.minY = Math.min(y1, y2);
+        this.minZ = Math.min(z1, z2);
+        this.maxX = Math.max(x1, x2);
+        this.maxY = Math.max(y1, y2);
+        this.maxZ = Math.max(z1, z2);
+        this.minChunkX = minX >> 4;
+        this.minChunkZ = minZ >> 4;
+        this.chunksWide = (maxX >> 4) - minChunkX + 1;
+        long count = countChunks(x1, z1, x2, z2);
+        if (count > MAX_CHUNKS) throw new IllegalArgumentException("Region covers " + count + " chunks, the limit is " + MAX_CHUNKS);
+        this.chunkCount = (int) count;
+        this.budgetNanos = budgetNanos;
+    }
+
+    // In long, far apart corners overflow an int
+    public static long countChunks(int x1, int z1, int x2, int z2) {
+        long wide = Math.abs((long) (x1 >> 4) - (x2 >> 4)) + 1L;
+        long deep = Math.abs((long) (z1 >> 4) - (z2 >> 4)) + 1L;
+        return wide * deep;
+    }
+
+    public void setTaskId(int taskId) {
+        this.taskId = taskId;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+
+        while (nextChunk < chunkCount && System.nanoTime() < deadline) {
+            int chunkX = minChunkX + nextChunk % chunksWide;
+            int chunkZ = minChunkZ + nextChunk / chunksWide;
+            nextChunk++;
+
+            if (!world.isChunkLoaded(chunkX, chunkZ)) {
+                unloadedChunks++;
+                continue;
+            }
+
+            for (BlockState state : world.getChunkAt(chunkX, chunkZ).getTileEntities()) {
+                int x = state.getX(), y = state.getY(), z = state.getZ();
+                if (x < minX || x > maxX || y < minY || y > maxY || z < minZ || z > maxZ) continue;
+                if (!plugin.isRegionScanType(state.getType().getId())) continue;
+
+                if (plugin.registerState(state)) registered++;
+                else alreadyRegistered++;
+            }
+        }
+
+        if (nextChunk >= chunkCount) {
+            plugin.getServer().getScheduler().cancelTask(taskId);
+            if (registered > 0) plugin.requestSave();
+
+            sender.sendMessage(ChatColor.GREEN + "Region scan done: registered " + registered + " containers, "
+                    + alreadyRegistered + " already registered.");
+            if (unloadedChunks > 0) {
+                sender.sendMessage(ChatColor.YELLOW + "" + unloadedChunks + " unloaded chunks were skipped.");
+            }
+            System.out.println(ChatColor.GREEN + "[ContainerUtils] Region registration in " + world.getName()
+                    + " registered " + registered + " containers.");
+            return;
+        }
+
+        if (start - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+            lastProgress = start;
+            sender.sendMessage(ChatColor.GRAY + "Scanned " + nextChunk + "/" + chunkCount + " chunks, registered " + registered + " containers so far.");
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.garsooon.containerutils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything that gets persisted: the containers, the named templates and the groups.
+ */
+final class RegistrySnapshot {
+
+    final List<ContainerSnapshot> containers;
+    final Map<String, RestockTemplate> namedTemplates;
+    final List<GroupSnapshot> groups;
+
+    RegistrySnapshot(List<ContainerSnapshot> containers, Map<String, RestockTemplate> namedTemplates, List<GroupSnapshot> groups) {
+        this.containers = containers;
+        this.namedTemplates = namedTemplates;
+        this.groups = groups;
+    }
+}
@@ -0,0 +1,108 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+
+import java.util.*;
+
+/**
+ * Collects auto-restock announcements for one tick and sends each nearby player a single message.
+ * Players are looked up through a per-world, per-chunk index that is rebuilt at most once per tick.
+ */
+public class RestockAnnouncer {
+
+    private final Server server;
+    private final Map<String, Map<Long, List<IndexedPlayer>>> index = new HashMap<>();
+    private final Map<Player, Integer> counts = new LinkedHashMap<>();
+    private long indexedTick = -1L;
+
+    private double radius = 10.0;
+    private double radiusSquared = 100.0;
+    private int chunkRadius = 1;
+
+    public RestockAnnouncer(Server server) {
+        this.server = server;
+    }
+
+    public void setRadius(double radius) {
+        this.radius = radius;
+        this.radiusSquared = radius * radius;
+        this.chunkRadius = (int) Math.ceil(radius / 16.0);
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public void announce(ContainerKey key, long tick) {
+        if (indexedTick != tick) rebuild(tick);
+
+        Map<Long, List<IndexedPlayer>> worldIndex = index.get(key.getWorldName());
+        if (worldIndex == null) return;
+
+        double x = key.getX() + 0.5;
+        double y = key.getY() + 0.5;
+        double z = key.getZ() + 0.5;
+        int chunkX = key.getChunkX();
+        int chunkZ = key.getChunkZ();
+
+        for (int cx = chunkX - chunkRadius; cx <= chunkX + chunkRadius; cx++) {
+            for (int cz = chunkZ - chunkRadius; cz <= chunkZ + chunkRadius; cz++) {
+                List<IndexedPlayer> bucket = worldIndex.get(ContainerKey.chunkKey(cx, cz));
+                if (bucket == null) continue;
+
+                for (IndexedPlayer p : bucket) {
+                    double dx = p.x - x;
+                    double dy = p.y - y;
+                    double dz = p.z - z;
+                    if (dx * dx + dy * dy + dz * dz <= radiusSquared) {
+                        counts.merge(p.player, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+    }
+
+    // Sends the collected messages, called once at the end of a batch of restocks
+    public void flush() {
+        if (counts.isEmpty()) return;
+
+        for (Map.Entry<Player, Integer> entry : counts.entrySet()) {
+            int count = entry.getValue();
+            if (count == 1) {
+                entry.getKey().sendMessage(ChatColor.GRAY + "Container auto-restocked nearby.");
+            } else {
+                entry.getKey().sendMessage(ChatColor.GRAY + "" + count + " containers auto-restocked nearby.");
+            }
+        }
+        counts.clear();
+    }
+
+    private void rebuild(long tick) {
+        index.clear();
+        for (Player player : server.getOnlinePlayers()) {
+            Location loc = player.getLocation();
+            IndexedPlayer indexed = new IndexedPlayer(player, loc.getX(), loc.getY(), loc.getZ());
+            index.computeIfAbsent(player.getWorld().getName(), w -> new HashMap<>())
+                    .computeIfAbsent(ContainerKey.chunkKey(loc.getBlockX() >> 4, loc.getBlockZ() >> 4), c -> new ArrayList<>())
+                    .add(indexed);
+        }
+        indexedTick = tick;
+    }
+
+    private static final class IndexedPlayer {
+        final Player player;
+        final double x;
+        final double y;
+        final double z;
+
+        IndexedPlayer(Player player, double x, double y, double z) {
+            this.player = player;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
@@ -1,12 +1,19 @@
 package org.garsooon.containerutils;
 
 import org.bukkit.ChatColor;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 public class RestockCommand implements CommandExecutor {
 
     private final ContainerUtils plugin;
@@ -27,11 +34,19 @@ public class RestockCommand implements CommandExecutor {
         if (args.length == 0) {
             sender.sendMessage(ChatColor.YELLOW + "ContainerUtils Commands:");
             sender.sendMessage(ChatColor.YELLOW + "/restock create - Register a container by punching it");
+            sender.sendMessage(ChatColor.YELLOW + "/restock region <x1> <y1> <z1> <x2> <y2> <z2> [world] - Register all containers in a cuboid");
+            sender.sendMessage(ChatColor.YELLOW + "/restock region select - Register all containers between two punched corners");
             sender.sendMessage(ChatColor.YELLOW + "/restock list - List all registered containers");
             sender.sendMessage(ChatColor.YELLOW + "/restock clear - Clear all registered containers");
             sender.sendMessage(ChatColor.YELLOW + "/restock time <seconds> - Set default restock time");
             sender.sendMessage(ChatColor.YELLOW + "/restock ctime <seconds> - Set container restock time");
             sender.sendMessage(ChatColor.YELLOW + "/restock reload - Reload config");
+            sender.sendMessage(ChatColor.YELLOW + "/restock stats [reset] - Show restock timer metrics");
+            sender.sendMessage(ChatColor.YELLOW + "/restock template <list|name|apply|stop|delete> - Manage shared templates");
+            sender.sendMessage(ChatColor.YELLOW + "/restock loot <list|assign|remove|stop> [table] - Roll containers from loot tables");
+            sender.sendMessage(ChatColor.YELLOW + "/restock group <list|info|create|delete|add|remove|stop|time|reset> - Restock containers together");
+            sender.sendMessage(ChatColor.YELLOW + "/restock export yaml - Write all containers to " + RestockStorage.EXPORT_FILE);
+            sender.sendMessage(ChatColor.YELLOW + "/restock import yaml - Replace all containers with " + RestockStorage.EXPORT_FILE);
             return true;
         }
 
@@ -52,18 +67,22 @@ public class RestockCommand implements CommandExecutor {
             return true;
         }
 
+        if (args[0].equalsIgnoreCase("region")) {
+            return handleRegion(sender, args);
+        }
+
         if (args[0].equalsIgnoreCase("list")) {
-            sender.sendMessage(ChatColor.GREEN + "Registered containers: " + plugin.containerTemplates.size());
-            for (String location : plugin.containerTemplates.keySet()) {
-                int timeLeft = plugin.containerTimers.getOrDefault(location, 0);
-                sender.sendMessage(ChatColor.GRAY + location + ChatColor.DARK_GRAY + " (restocks in " + timeLeft + "s)");
+            sender.sendMessage(ChatColor.GREEN + "Registered containers: " + plugin.getContainers().size()
+                    + ChatColor.GRAY + " (" + plugin.templatePool.size() + " distinct templates, "
+                    + plugin.getPendingRestockCount() + " waiting for chunk load)");
+            for (RestockContainer container : plugin.getContainers().values()) {
+                int timeLeft = plugin.getSecondsUntilRestock(container);
+                sender.sendMessage(ChatColor.GRAY + container.getKey().toString() + ChatColor.DARK_GRAY + " (restocks in " + timeLeft + "s)");
             }
             return true;
         }
 
         if (args[0].equalsIgnoreCase("clear")) {
-            plugin.containerTemplates.clear();
-            plugin.containerTimers.clear();
             sender.sendMessage(ChatColor.GREEN + "All registersed containers cleared!");
             plugin.clearRegisteredContainers();
             return true;
@@ -107,9 +126,9 @@ public class RestockCommand implements CommandExecutor {
             int seconds;
             try {
                 seconds = Integer.parseInt(args[1]);
-                if (seconds < 0) throw new NumberFormatException();
+                if (seconds < 1) throw new NumberFormatException();
             } catch (NumberFormatException e) {
-                player.sendMessage(ChatColor.RED + "Invalid time. Must be a non-negative number.");
+                player.sendMessage(ChatColor.RED + "Invalid time. Must be at least 1 second.");
                 return true;
             }
 
@@ -124,6 +143,359 @@ public class RestockCommand implements CommandExecutor {
             return true;
         }
 
+        if (args[0].equalsIgnoreCase("stats")) {
+            RestockMetrics metrics = plugin.getMetrics();
+            if (args.length >= 2 && args[1].equalsIgnoreCase("reset")) {
+                metrics.reset();
+                sender.sendMessage(ChatColor.GREEN + "Restock metrics reset.");
+                return true;
+            }
+
+            sender.sendMessage(ChatColor.GREEN + "ContainerUtils stats:");
+            sender.sendMessage(ChatColor.GRAY + "Containers: " + plugin.getContainers().size() + ", scheduled "
+                    + plugin.getScheduledRestockCount() + ", waiting for chunk load " + plugin.getPendingRestockCount()
+                    + ", frozen " + plugin.getInactiveRestockCount());
+            sender.sendMessage(ChatColor.GRAY + "Tick: " + metrics.getTickCount() + " ticks, avg " + metrics.getTickAverageNanos() / 1000L
+                    + "us, p50 <" + metrics.getTickPercentile(0.5) / 1000L + "us, p99 <" + metrics.getTickPercentile(0.99) / 1000L
+                    + "us, max " + metrics.getTickMaxNanos() / 1000L + "us");
+            sender.sendMessage(ChatColor.GRAY + "Restocks: " + metrics.getRestocks() + " ("
+                    + String.format("%.2f", metrics.getRestocksPerSecond()) + "/s last minute), skipped untouched "
+                    + metrics.getSkipped() + ", deferred " + metrics.getDeferred() + ", frozen " + metrics.getInactive() + ", on chunk load "
+                    + metrics.getChunkRestocks() + ", removed " + metrics.getRemoved());
+            sender.sendMessage(ChatColor.GRAY + "Saves: " + metrics.getSaves() + ", avg " + metrics.getSaveAverageNanos() / 1000000L
+                    + "ms, max " + metrics.getSaveMaxNanos() / 1000000L + "ms");
+            sender.sendMessage(ChatColor.GRAY + "Journal flushes: " + metrics.getJournalFlushes() + ", avg "
+                    + metrics.getJournalFlushAverageNanos() / 1000L + "us, max " + metrics.getJournalFlushMaxNanos() / 1000L + "us");
+            return true;
+        }
+
+        if (args[0].equalsIgnoreCase("template")) {
+            return handleTemplate(sender, args);
+        }
+
+        if (args[0].equalsIgnoreCase("loot")) {
+            return handleLoot(sender, args);
+        }
+
+        if (args[0].equalsIgnoreCase("group")) {
+            return handleGroup(sender, args);
+        }
+
+        if (args[0].equalsIgnoreCase("export") || args[0].equalsIgnoreCase("import")) {
+            if (args.length != 2 || !args[1].equalsIgnoreCase("yaml")) {
+                sender.sendMessage(ChatColor.RED + "Usage: /restock " + args[0].toLowerCase() + " yaml");
+                return true;
+            }
+
+            try {
+                if (args[0].equalsIgnoreCase("export")) {
+                    File file = plugin.exportYaml();
+                    sender.sendMessage(ChatColor.GREEN + "Exported " + plugin.getContainers().size() + " containers to " + file.getName());
+                } else {
+                    int count = plugin.importYaml();
+                    sender.sendMessage(ChatColor.GREEN + "Imported " + count + " containers from " + RestockStorage.EXPORT_FILE);
+                }
+            } catch (IOException e) {
+                sender.sendMessage(ChatColor.RED + "Failed to " + args[0].toLowerCase() + " containers: " + e.getMessage());
+            }
+            return true;
+        }
+
         return false;
     }
+
+    private boolean handleRegion(CommandSender sender, String[] args) {
+        if (args.length == 2 && args[1].equalsIgnoreCase("select")) {
+            if (!(sender instanceof Player)) {
+                sender.sendMessage(ChatColor.RED + "Only players can use this command.");
+                return true;
+            }
+
+            Player player = (Player) sender;
+            plugin.regionFirstCorners.remove(player.getUniqueId());
+            plugin.regionSelectPlayers.add(player.getUniqueId());
+            player.sendMessage(ChatColor.YELLOW + "Punch the first corner of the region.");
+            return true;
+        }
+
+        if (args.length != 7 && args.length != 8) {
+            sender.sendMessage(ChatColor.RED + "Usage: /restock region <x1> <y1> <z1> <x2> <y2> <z2> [world] or /restock region select");
+            return true;
+        }
+
+        World world;
+        if (args.length == 8) {
+            world = plugin.getServer().getWorld(args[7]);
+        } else if (sender instanceof Player) {
+            world = ((Player) sender).getWorld();
+        } else {
+            sender.sendMessage(ChatColor.RED + "Specify a world when running this from the console.");
+            return true;
+        }
+        if (world == null) {
+            sender.sendMessage(ChatColor.RED + "Unknown world '" + args[7] + "'.");
+            return true;
+        }
+
+        int[] coords = new int[6];
+        try {
+            for (int i = 0; i < 6; i++) coords[i] = Integer.parseInt(args[i + 1]);
+        } catch (NumberFormatException e) {
+            sender.sendMessage(ChatColor.RED + "Invalid number!");
+            return true;
+        }
+
+        plugin.startRegionRegistration(sender, world, coords[0], coords[1], coords[2], coords[3], coords[4], coords[5]);
+        return true;
+    }
+
+    private boolean handleTemplate(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage(ChatColor.RED + "Usage: /restock template <list|name|apply|stop|delete> [name]");
+            return true;
+        }
+
+        String sub = args[1].toLowerCase();
+        if (sub.equals("list")) {
+            sender.sendMessage(ChatColor.GREEN + "Named templates: " + plugin.templatePool.getNamed().size());
+            for (Map.Entry<String, RestockTemplate> entry : plugin.templatePool.getNamed().entrySet()) {
+                sender.sendMessage(ChatColor.GRAY + entry.getKey() + ChatColor.DARK_GRAY + " (" + entry.getValue().getSize() + " slots)");
+            }
+            return true;
+        }
+
+        if (sub.equals("delete")) {
+            if (args.length != 3) {
+                sender.sendMessage(ChatColor.RED + "Usage: /restock template delete <name>");
+                return true;
+            }
+            if (plugin.removeTemplateName(args[2])) {
+                sender.sendMessage(ChatColor.GREEN + "Template '" + args[2] + "' deleted.");
+            } else {
+                sender.sendMessage(ChatColor.RED + "No template named '" + args[2] + "'.");
+            }
+            return true;
+        }
+
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(ChatColor.RED + "Only players can use this command.");
+            return true;
+        }
+        Player player = (Player) sender;
+
+        if (sub.equals("stop")) {
+            plugin.templateApplyPlayers.remove(player.getUniqueId());
+            plugin.pendingTemplateNames.remove(player.getUniqueId());
+            player.sendMessage(ChatColor.GREEN + "Stopped applying templates.");
+            return true;
+        }
+
+        if (args.length != 3) {
+            player.sendMessage(ChatColor.RED + "Usage: /restock template " + sub + " <name>");
+            return true;
+        }
+
+        if (sub.equals("name")) {
+            plugin.pendingTemplateNames.put(player.getUniqueId(), args[2].toLowerCase());
+            player.sendMessage(ChatColor.YELLOW + "Punch a registered container to save its contents as template '" + args[2] + "'.");
+            return true;
+        }
+
+        if (sub.equals("apply")) {
+            if (plugin.templatePool.getNamed(args[2]) == null) {
+                player.sendMessage(ChatColor.RED + "No template named '" + args[2] + "'.");
+                return true;
+            }
+            plugin.templateApplyPlayers.put(player.getUniqueId(), args[2].toLowerCase());
+            player.sendMessage(ChatColor.YELLOW + "Punch containers to give them template '" + args[2] + "'. Use /restock template stop when done.");
+            return true;
+        }
+
+        player.sendMessage(ChatColor.RED + "Usage: /restock template <list|name|apply|stop|delete> [name]");
+        return true;
+    }
+
+    private boolean handleLoot(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage(ChatColor.RED + "Usage: /restock loot <list|assign|remove|stop> [table]");
+            return true;
+        }
+
+        String sub = args[1].toLowerCase();
+        if (sub.equals("list")) {
+            sender.sendMessage(ChatColor.GREEN + "Loot tables: " + plugin.getLootTables().size());
+            for (LootTable table : plugin.getLootTables().values()) {
+                sender.sendMessage(ChatColor.GRAY + table.getName() + ChatColor.DARK_GRAY + " (" + table.getEntryCount()
+                        + " entries, " + table.getRollRange() + " rolls)");
+            }
+            return true;
+        }
+
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(ChatColor.RED + "Only players can use this command.");
+            return true;
+        }
+        Player player = (Player) sender;
+
+        if (sub.equals("stop")) {
+            plugin.lootAssignPlayers.remove(player.getUniqueId());
+            player.sendMessage(ChatColor.GREEN + "Stopped assigning loot tables.");
+            return true;
+        }
+
+        if (sub.equals("remove")) {
+            plugin.lootAssignPlayers.put(player.getUniqueId(), "");
+            player.sendMessage(ChatColor.YELLOW + "Punch containers to restock them from their template again. Use /restock loot stop when done.");
+            return true;
+        }
+
+        if (sub.equals("assign") && args.length == 3) {
+            if (plugin.getLootTable(args[2]) == null) {
+                player.sendMessage(ChatColor.RED + "No loot table named '" + args[2] + "'.");
+                return true;
+            }
+            plugin.lootAssignPlayers.put(player.getUniqueId(), args[2].toLowerCase());
+            player.sendMessage(ChatColor.YELLOW + "Punch registered containers to give them loot table '" + args[2] + "'. Use /restock loot stop when done.");
+            return true;
+        }
+
+        player.sendMessage(ChatColor.RED + "Usage: /restock loot <list|assign|remove|stop> [table]");
+        return true;
+    }
+
+    private boolean handleGroup(CommandSender sender, String[] args) {
+        String usage = "Usage: /restock group <list|info|create|delete|add|remove|stop|time|reset> [name] [seconds]";
+        if (args.length < 2) {
+            sender.sendMessage(ChatColor.RED + usage);
+            return true;
+        }
+
+        String sub = args[1].toLowerCase();
+        if (sub.equals("list")) {
+            sender.sendMessage(ChatColor.GREEN + "Groups: " + plugin.getGroups().size());
+            for (RestockGroup group : plugin.getGroups()) {
+                sender.sendMessage(ChatColor.GRAY + group.getName() + ChatColor.DARK_GRAY + " (" + group.size() + " containers, every "
+                        + group.getRestockTime() + "s, restocks in " + plugin.getSecondsUntilRestock(group) + "s)");
+            }
+            return true;
+        }
+
+        if (sub.equals("create")) {
+            if (args.length != 3 && args.length != 4) {
+                sender.sendMessage(ChatColor.RED + "Usage: /restock group create <name> [seconds]");
+                return true;
+            }
+            int seconds = plugin.getDefaultRestockTime();
+            if (args.length == 4) {
+                try {
+                    seconds = Integer.parseInt(args[3]);
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(ChatColor.RED + "Invalid number!");
+                    return true;
+                }
+            }
+            if (seconds < 1) {
+                sender.sendMessage(ChatColor.RED + "Time must be at least 1 second!");
+                return true;
+            }
+
+            if (plugin.createGroup(args[2], seconds)) {
+                sender.sendMessage(ChatColor.GREEN + "Group '" + args[2] + "' created, restocking every " + seconds + " seconds.");
+            } else {
+                sender.sendMessage(ChatColor.RED + "Group '" + args[2] + "' already exists.");
+            }
+            return true;
+        }
+
+        if (sub.equals("stop") || sub.equals("remove")) {
+            if (!(sender instanceof Player)) {
+                sender.sendMessage(ChatColor.RED + "Only players can use this command.");
+                return true;
+            }
+            Player player = (Player) sender;
+            if (sub.equals("stop")) {
+                plugin.groupAssignPlayers.remove(player.getUniqueId());
+                player.sendMessage(ChatColor.GREEN + "Stopped assigning groups.");
+            } else {
+                plugin.groupAssignPlayers.put(player.getUniqueId(), "");
+                player.sendMessage(ChatColor.YELLOW + "Punch containers to take them out of their group. Use /restock group stop when done.");
+            }
+            return true;
+        }
+
+        if (args.length < 3) {
+            sender.sendMessage(ChatColor.RED + usage);
+            return true;
+        }
+        RestockGroup group = plugin.getGroup(args[2]);
+        if (group == null) {
+            sender.sendMessage(ChatColor.RED + "No group named '" + args[2] + "'.");
+            return true;
+        }
+
+        if (sub.equals("info")) {
+            Set<Long> chunks = new HashSet<>();
+            for (RestockContainer member : group.getMembers()) chunks.add(member.getKey().getChunkKey());
+            sender.sendMessage(ChatColor.GREEN + "Group " + group.getName() + ": " + group.size() + " containers in " + chunks.size()
+                    + " chunks, every " + group.getRestockTime() + "s, restocks in " + plugin.getSecondsUntilRestock(group) + "s");
+            int shown = 0;
+            for (RestockContainer member : group.getMembers()) {
+                if (shown++ == 10) {
+                    sender.sendMessage(ChatColor.DARK_GRAY + "... and " + (group.size() - 10) + " more");
+                    break;
+                }
+                sender.sendMessage(ChatColor.GRAY + member.getKey().toString());
+            }
+            return true;
+        }
+
+        if (sub.equals("delete")) {
+            int members = group.size();
+            plugin.deleteGroup(group);
+            sender.sendMessage(ChatColor.GREEN + "Group '" + group.getName() + "' deleted, " + members + " containers have their own timers again.");
+            return true;
+        }
+
+        if (sub.equals("reset")) {
+            int count = plugin.resetGroup(group);
+            sender.sendMessage(ChatColor.GREEN + "Restocking " + count + " containers in group '" + group.getName() + "'.");
+            return true;
+        }
+
+        if (sub.equals("time")) {
+            if (args.length != 4) {
+                sender.sendMessage(ChatColor.RED + "Usage: /restock group time <name> <seconds>");
+                return true;
+            }
+            int seconds;
+            try {
+                seconds = Integer.parseInt(args[3]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage(ChatColor.RED + "Invalid number!");
+                return true;
+            }
+            if (seconds < 1) {
+                sender.sendMessage(ChatColor.RED + "Time must be at least 1 second!");
+                return true;
+            }
+            plugin.setGroupRestockTime(group, seconds);
+            sender.sendMessage(ChatColor.GREEN + "Group '" + group.getName() + "' now restocks every " + seconds + " seconds.");
+            return true;
+        }
+
+        if (sub.equals("add")) {
+            if (!(sender instanceof Player)) {
+                sender.sendMessage(ChatColor.RED + "Only players can use this command.");
+                return true;
+            }
+            Player player = (Player) sender;
+            plugin.groupAssignPlayers.put(player.getUniqueId(), group.getName());
+            player.sendMessage(ChatColor.YELLOW + "Punch registered containers to add them to group '" + group.getName()
+                    + "'. Use /restock group stop when done.");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.RED + usage);
+        return true;
+    }
 }
@@ -0,0 +1,79 @@
+package org.garsooon.containerutils;
+
+/**
+ * Everything the plugin knows about one registered container.
+ * Only modified on the server thread.
+ */
+public class RestockContainer extends Scheduled {
+
+    private final ContainerKey key;
+    private RestockTemplate template;
+    private int restockTime;
+    private String lootTable;
+    private RestockGroup group;
+    private boolean touched = true;
+    private long openedTick = Long.MIN_VALUE;
+
+    public RestockContainer(ContainerKey key, RestockTemplate template, int restockTime) {
+        this.key = key;
+        this.template = template;
+        this.restockTime = Math.max(1, restockTime);
+    }
+
+    public ContainerKey getKey() {
+        return key;
+    }
+
+    public RestockTemplate getTemplate() {
+        return template;
+    }
+
+    public void setTemplate(RestockTemplate template) {
+        this.template = template;
+    }
+
+    // Name of the loot table rolled on restock, null to restock the template
+    public String getLootTable() {
+        return lootTable;
+    }
+
+    public void setLootTable(String lootTable) {
+        this.lootTable = lootTable;
+    }
+
+    // The group that owns this container's schedule, null when it has its own
+    public RestockGroup getGroup() {
+        return group;
+    }
+
+    void setGroup(RestockGroup group) {
+        this.group = group;
+    }
+
+    public int getRestockTime() {
+        return restockTime;
+    }
+
+    public void setRestockTime(int restockTime) {
+        this.restockTime = Math.max(1, restockTime);
+    }
+
+    // Set when a player opens the container, cleared by a restock unless the window may still be open
+    public boolean isTouched() {
+        return touched;
+    }
+
+    public void setTouched(boolean touched) {
+        this.touched = touched;
+    }
+
+    // Server tick of the last time a player opened it, Long.MIN_VALUE if nobody has since the server started
+    public long getOpenedTick() {
+        return openedTick;
+    }
+
+    public void markOpened(long tick) {
+        touched = true;
+        openedTick = tick;
+    }
+}
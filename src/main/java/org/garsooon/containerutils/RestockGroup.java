@@ -0,0 +1,91 @@
+package org.garsooon.containerutils;
+
+import java.util.*;
+
+/**
+ * Named set of containers that share one interval and one deadline and restock together.
+ * Members are kept sorted by world and chunk so a batch restock walks one chunk at a time. Server thread only.
+ */
+public class RestockGroup extends Scheduled {
+
+    private static final Comparator<RestockContainer> CHUNK_ORDER = Comparator
+            .<RestockContainer>comparingInt(container -> container.getKey().getWorldId())
+            .thenComparingLong(container -> container.getKey().getChunkKey());
+
+    private final String name;
+    private int restockTime;
+    private final List<RestockContainer> members = new ArrayList<>();
+    private final List<RestockContainer> membersView = Collections.unmodifiableList(members);
+
+    // The members of the restock in progress, handed out a tick budget at a time. Null when none is running.
+    private RestockContainer[] batch;
+    private int cursor;
+
+    public RestockGroup(String name, int restockTime) {
+        this.name = name;
+        this.restockTime = Math.max(1, restockTime);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRestockTime() {
+        return restockTime;
+    }
+
+    public void setRestockTime(int restockTime) {
+        this.restockTime = Math.max(1, restockTime);
+    }
+
+    // Inserted at its place in chunk order, reading the members never has to sort
+    void add(RestockContainer container) {
+        int index = Collections.binarySearch(members, container, CHUNK_ORDER);
+        members.add(index < 0 ? -index - 1 : index, container);
+    }
+
+    // Linear, membership changes are rare next to restocks
+    void remove(RestockContainer container) {
+        members.remove(container);
+    }
+
+    void clearMembers() {
+        for (RestockContainer member : members) member.setGroup(null);
+        members.clear();
+    }
+
+    // Sorted by chunk, read-only view of the live list
+    public List<RestockContainer> getMembers() {
+        return membersView;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    // Takes a copy of the members in chunk order, later membership changes don't affect the running restock
+    void startBatch() {
+        batch = getMembers().toArray(new RestockContainer[0]);
+        cursor = 0;
+    }
+
+    boolean isRestocking() {
+        return batch != null;
+    }
+
+    // Null once every member of the batch has been handed out
+    RestockContainer nextInBatch() {
+        if (batch == null) return null;
+        if (cursor == batch.length) {
+            batch = null;
+            return null;
+        }
+        RestockContainer next = batch[cursor];
+        batch[cursor++] = null;
+        return next;
+    }
+
+    void endBatch() {
+        batch = null;
+    }
+}
@@ -0,0 +1,426 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.ChatColor;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of registry changes made since the last full save, so a save costs as much as the change.
+ * The server thread appends records to an in-memory buffer; flush() writes and fsyncs the batch from any thread.
+ * Compaction seals the buffer at the moment the snapshot is taken, the sealed records go to restocks.journal.old,
+ * which is deleted once the snapshot is on disk. Records set state rather than change it, so replaying a record the
+ * snapshot already contains is harmless. Every journal file starts with a magic number and a layout version, a file
+ * written with another layout is set aside as .unreadable instead of being misparsed.
+ */
+public class RestockJournal {
+
+    public static final String JOURNAL_FILE = "restocks.journal";
+    public static final String OLD_JOURNAL_FILE = "restocks.journal.old";
+
+    private static final int MAGIC = 0x43555244; // "CURJ"
+    // Bump whenever a record layout changes, journals from before the header existed count as version 0
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+
+    private static final byte REGISTER = 1;
+    private static final byte UNREGISTER = 2;
+    private static final byte INTERVAL = 3;
+    private static final byte CHECKPOINT = 4;
+    private static final byte TEMPLATE_NAME = 5;
+    private static final byte CLEAR = 6;
+    private static final byte GROUP = 7;
+    private static final byte GROUP_DELETE = 8;
+    private static final byte MEMBER = 9;
+
+    private final File journalFile;
+    private final File oldFile;
+
+    // Guards the buffers, held only for in-memory work
+    private final Object bufferLock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    private ByteBuffer sealed;
+
+    // Guards the files
+    private final Object ioLock = new Object();
+    private FileChannel channel;
+    private volatile long fileSize;
+
+    public RestockJournal(File dataFolder) {
+        this.journalFile = new File(dataFolder, JOURNAL_FILE);
+        this.oldFile = new File(dataFolder, OLD_JOURNAL_FILE);
+        this.fileSize = journalFile.length();
+    }
+
+    public void register(ContainerKey key, RestockTemplate template, int restockTime, long due, String lootTable, String group) {
+        ByteBuffer body = writeKey(ByteBuffer.allocate(64), key);
+        body = RestockStorage.writeVarInt(body, restockTime);
+        body = RestockStorage.writeVarLong(body, due);
+        body = RestockStorage.writeString(body, lootTable != null ? lootTable : "");
+        body = RestockStorage.writeString(body, group != null ? group : "");
+        body = writeItems(body, template.getItems());
+        append(REGISTER, body);
+    }
+
+    public void unregister(ContainerKey key) {
+        append(UNREGISTER, writeKey(ByteBuffer.allocate(32), key));
+    }
+
+    public void interval(ContainerKey key, int restockTime) {
+        append(INTERVAL, RestockStorage.writeVarInt(writeKey(ByteBuffer.allocate(32), key), restockTime));
+    }
+
+    // Deadlines are absolute, a checkpoint is only needed when a restock or a command moves one
+    public void checkpoint(ContainerKey key, long due) {
+        append(CHECKPOINT, RestockStorage.writeVarLong(writeKey(ByteBuffer.allocate(32), key), due));
+    }
+
+    // A null template removes the name
+    public void templateName(String name, RestockTemplate template) {
+        ByteBuffer body = RestockStorage.writeString(ByteBuffer.allocate(64), name);
+        body = RestockStorage.writeVarInt(body, template != null ? 1 : 0);
+        if (template != null) body = writeItems(body, template.getItems());
+        append(TEMPLATE_NAME, body);
+    }
+
+    public void clear() {
+        append(CLEAR, ByteBuffer.allocate(0));
+    }
+
+    public void group(String name, int restockTime, long due) {
+        ByteBuffer body = RestockStorage.writeString(ByteBuffer.allocate(32), name);
+        body = RestockStorage.writeVarInt(body, restockTime);
+        append(GROUP, RestockStorage.writeVarLong(body, due));
+    }
+
+    public void deleteGroup(String name) {
+        append(GROUP_DELETE, RestockStorage.writeString(ByteBuffer.allocate(32), name));
+    }
+
+    // A null group takes the container out of its group
+    public void member(ContainerKey key, String group) {
+        append(MEMBER, RestockStorage.writeString(writeKey(ByteBuffer.allocate(32), key), group != null ? group : ""));
+    }
+
+    // Record layout: varint body length + 1, type, body, then a CRC32 of type and body
+    private void append(byte type, ByteBuffer body) {
+        body.flip();
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(body.array(), 0, body.limit());
+
+        synchronized (bufferLock) {
+            pending = RestockStorage.writeVarInt(pending, body.limit() + 1);
+            pending = RestockStorage.ensure(pending, body.limit() + 5);
+            pending.put(type);
+            pending.put(body);
+            pending.putInt((int) crc.getValue());
+        }
+    }
+
+    // Bytes on disk plus bytes waiting for the next flush, compared against the compaction threshold
+    public long size() {
+        synchronized (bufferLock) {
+            return fileSize + pending.position() + (sealed != null ? sealed.position() : 0);
+        }
+    }
+
+    // Called on the server thread in the same tick the compaction snapshot is taken
+    public void seal() {
+        synchronized (bufferLock) {
+            if (sealed != null) {
+                sealed = RestockStorage.ensure(sealed, pending.position());
+                pending.flip();
+                sealed.put(pending);
+            } else {
+                sealed = pending;
+            }
+            pending = ByteBuffer.allocate(4096);
+        }
+    }
+
+    // Writes and fsyncs everything appended so far. Sealed records are moved to the old journal first.
+    public void flush() throws IOException {
+        synchronized (ioLock) {
+            ByteBuffer sealedBatch;
+            ByteBuffer batch;
+            synchronized (bufferLock) {
+                sealedBatch = sealed;
+                sealed = null;
+                batch = pending;
+                pending = ByteBuffer.allocate(4096);
+            }
+
+            if (sealedBatch != null) {
+                writeBatch(sealedBatch);
+                rotate();
+            }
+            writeBatch(batch);
+        }
+    }
+
+    // Called once the snapshot that covers the old journal has been written
+    public void deleteOld() {
+        synchronized (ioLock) {
+            if (oldFile.exists() && !oldFile.delete()) {
+                System.out.println(ChatColor.RED + "[ContainerUtils] Could not delete " + OLD_JOURNAL_FILE);
+            }
+        }
+    }
+
+    // Drops everything, only valid right after a synchronous full save on the server thread
+    public void reset() {
+        synchronized (ioLock) {
+            synchronized (bufferLock) {
+                sealed = null;
+                pending = ByteBuffer.allocate(4096);
+            }
+            closeChannel();
+            if (journalFile.exists() && !journalFile.delete()) {
+                System.out.println(ChatColor.RED + "[ContainerUtils] Could not delete " + JOURNAL_FILE);
+            }
+            deleteOld();
+            fileSize = 0L;
+        }
+    }
+
+    public void close() {
+        synchronized (ioLock) {
+            closeChannel();
+        }
+    }
+
+    private void writeBatch(ByteBuffer batch) throws IOException {
+        if (batch.position() == 0) return;
+        batch.flip();
+        long written = 0L;
+        if (channel == null) {
+            channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (channel.size() == 0L) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC);
+                header.put(VERSION);
+                header.flip();
+                while (header.hasRemaining()) written += channel.write(header);
+            }
+        }
+        while (batch.hasRemaining()) written += channel.write(batch);
+        channel.force(false);
+        fileSize += written;
+    }
+
+    // If an earlier compaction failed to write its snapshot the old journal is still there, it is extended rather than
+    // replaced, without the header of the appended file
+    private void rotate() throws IOException {
+        closeChannel();
+        if (!journalFile.exists()) return;
+
+        if (oldFile.exists()) {
+            try (FileChannel source = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(oldFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long position = HEADER_SIZE;
+                long size = source.size();
+                while (position < size) position += source.transferTo(position, size - position, target);
+                target.force(false);
+            }
+            Files.delete(journalFile.toPath());
+        } else {
+            RestockStorage.replaceFile(journalFile, oldFile);
+        }
+        fileSize = 0L;
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println(ChatColor.RED + "[ContainerUtils] Failed to close " + JOURNAL_FILE + ": " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    public boolean hasRecords() {
+        return oldFile.exists() || journalFile.length() > 0L;
+    }
+
+    // Applies the old journal and then the current one on top of the loaded snapshot (null when there was none)
+    public RegistrySnapshot replay(RegistrySnapshot base) throws IOException {
+        ReplayState state = new ReplayState();
+        if (base != null) {
+            for (ContainerSnapshot container : base.containers) state.containers.put(container.key, container);
+            state.names.putAll(base.namedTemplates);
+            for (GroupSnapshot group : base.groups) state.groups.put(group.name, group);
+        }
+
+        int records = replayFile(oldFile, state) + replayFile(journalFile, state);
+        System.out.println(ChatColor.GREEN + "[ContainerUtils] Replayed " + records + " journal records.");
+        return new RegistrySnapshot(new ArrayList<>(state.containers.values()), state.names, new ArrayList<>(state.groups.values()));
+    }
+
+    private static final class ReplayState {
+        final Map<ContainerKey, ContainerSnapshot> containers = new LinkedHashMap<>();
+        final Map<String, RestockTemplate> names = new HashMap<>();
+        final Map<String, GroupSnapshot> groups = new LinkedHashMap<>();
+    }
+
+    // A torn or corrupt record ends the replay of that file, everything before it is kept.
+    // A file with another layout version can't be told apart from damage record by record, so none of it is applied.
+    private static int replayFile(File file, ReplayState state) throws IOException {
+        if (!file.exists()) return 0;
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        // Torn while the header was written, before any record
+        if (buf.remaining() < HEADER_SIZE) return 0;
+
+        int version = buf.getInt() == MAGIC ? buf.get() : 0;
+        if (version != VERSION) {
+            File unreadable = new File(file.getParentFile(), file.getName() + ".unreadable");
+            RestockStorage.replaceFile(file, unreadable);
+            System.out.println(ChatColor.RED + "[ContainerUtils] " + file.getName() + " has journal layout version " + version
+                    + ", this build reads version " + VERSION + ". Changes since the last full save were not applied, the file was kept as "
+                    + unreadable.getName() + ".");
+            return 0;
+        }
+
+        int records = 0;
+        while (buf.hasRemaining()) {
+            int start = buf.position();
+            try {
+                int length = RestockStorage.readVarInt(buf);
+                if (length <= 0 || length + 4 > buf.remaining()) throw new BufferUnderflowException();
+
+                int bodyStart = buf.position();
+                CRC32 crc = new CRC32();
+                crc.update(buf.array(), bodyStart, length);
+                ByteBuffer record = ByteBuffer.wrap(buf.array(), bodyStart, length).slice();
+                buf.position(bodyStart + length);
+                if ((int) crc.getValue() != buf.getInt()) throw new IOException("checksum mismatch");
+
+                apply(record, state);
+                records++;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IOException e) {
+                System.out.println(ChatColor.RED + "[ContainerUtils] Ignoring damaged tail of " + file.getName() + " at byte " + start);
+                break;
+            }
+        }
+        return records;
+    }
+
+    // Members of a deleted group are journaled leaving it, so deleting the group here only drops its definition
+    private static void apply(ByteBuffer record, ReplayState state) throws IOException {
+        Map<ContainerKey, ContainerSnapshot> containers = state.containers;
+        byte type = record.get();
+        if (type == CLEAR) {
+            containers.clear();
+            return;
+        }
+        if (type == TEMPLATE_NAME) {
+            String name = RestockStorage.readString(record);
+            if (RestockStorage.readVarInt(record) == 0) {
+                state.names.remove(name);
+            } else {
+                state.names.put(name, readTemplate(record));
+            }
+            return;
+        }
+        if (type == GROUP) {
+            String name = RestockStorage.readString(record);
+            int restockTime = RestockStorage.readVarInt(record);
+            state.groups.put(name, new GroupSnapshot(name, restockTime, RestockStorage.readVarLong(record)));
+            return;
+        }
+        if (type == GROUP_DELETE) {
+            state.groups.remove(RestockStorage.readString(record));
+            return;
+        }
+
+        ContainerKey key = readKey(record);
+        ContainerSnapshot current = containers.get(key);
+        switch (type) {
+            case REGISTER:
+                int restockTime = RestockStorage.readVarInt(record);
+                long due = RestockStorage.readVarLong(record);
+                String lootTable = RestockStorage.readString(record);
+                String group = RestockStorage.readString(record);
+                containers.put(key, new ContainerSnapshot(key, readTemplate(record), due, restockTime,
+                        lootTable.isEmpty() ? null : lootTable, group.isEmpty() ? null : group));
+                break;
+            case UNREGISTER:
+                containers.remove(key);
+                break;
+            case INTERVAL:
+                int interval = RestockStorage.readVarInt(record);
+                if (current != null) {
+                    containers.put(key, new ContainerSnapshot(key, current.template, current.due, interval,
+                            current.lootTable, current.group));
+                }
+                break;
+            case CHECKPOINT:
+                long checkpoint = RestockStorage.readVarLong(record);
+                if (current != null) {
+                    containers.put(key, new ContainerSnapshot(key, current.template, checkpoint, current.restockTime,
+                            current.lootTable, current.group));
+                }
+                break;
+            case MEMBER:
+                String member = RestockStorage.readString(record);
+                if (current != null) {
+                    containers.put(key, new ContainerSnapshot(key, current.template, current.due, current.restockTime,
+                            current.lootTable, member.isEmpty() ? null : member));
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal record " + type);
+        }
+    }
+
+    private static ByteBuffer writeKey(ByteBuffer buf, ContainerKey key) {
+        buf = RestockStorage.writeString(buf, key.getWorldName());
+        buf = RestockStorage.writeSignedVarInt(buf, key.getX());
+        buf = RestockStorage.writeSignedVarInt(buf, key.getY());
+        return RestockStorage.writeSignedVarInt(buf, key.getZ());
+    }
+
+    private static ContainerKey readKey(ByteBuffer buf) throws IOException {
+        String world = RestockStorage.readString(buf);
+        int x = RestockStorage.readSignedVarInt(buf);
+        int y = RestockStorage.readSignedVarInt(buf);
+        int z = RestockStorage.readSignedVarInt(buf);
+        return ContainerKey.of(world, x, y, z);
+    }
+
+    // Slots are stored by type id, the journal is short-lived so the name table of the snapshot formats isn't needed
+    private static ByteBuffer writeItems(ByteBuffer buf, ItemStack[] items) {
+        buf = RestockStorage.writeVarInt(buf, items.length);
+        for (ItemStack item : items) {
+            if (item == null) {
+                buf = RestockStorage.writeVarInt(buf, 0);
+                continue;
+            }
+            buf = RestockStorage.writeVarInt(buf, item.getTypeId() + 1);
+            buf = RestockStorage.writeVarInt(buf, item.getAmount());
+            buf = RestockStorage.writeSignedVarInt(buf, item.getDurability());
+        }
+        return buf;
+    }
+
+    private static RestockTemplate readTemplate(ByteBuffer buf) throws IOException {
+        ItemStack[] items = new ItemStack[RestockStorage.readVarInt(buf)];
+        for (int i = 0; i < items.length; i++) {
+            int typeId = RestockStorage.readVarInt(buf) - 1;
+            if (typeId < 0) continue;
+            int amount = RestockStorage.readVarInt(buf);
+            short durability = (short) RestockStorage.readSignedVarInt(buf);
+            items[i] = new ItemStack(typeId, amount, durability);
+        }
+        return new RestockTemplate(RestockTemplate.contentId(items), items);
+    }
+}
@@ -0,0 +1,242 @@
+package org.garsooon.containerutils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low overhead counters for the restock timer. Recorded on the main thread,
+ * readable from any thread without locking.
+ */
+public class RestockMetrics {
+
+    // Bucket i counts durations in [2^i, 2^(i+1)) nanoseconds
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray tickHistogram = new AtomicLongArray(BUCKETS);
+    private final LongAdder tickCount = new LongAdder();
+    private final LongAdder tickNanos = new LongAdder();
+    private final AtomicLong tickMaxNanos = new AtomicLong();
+
+    private final LongAdder restocks = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder inactive = new LongAdder();
+    private final LongAdder chunkRestocks = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+
+    private final LongAdder saves = new LongAdder();
+    private final LongAdder saveNanos = new LongAdder();
+    private final AtomicLong saveMaxNanos = new AtomicLong();
+
+    private final LongAdder journalFlushes = new LongAdder();
+    private final LongAdder journalFlushNanos = new LongAdder();
+    private final AtomicLong journalFlushMaxNanos = new AtomicLong();
+
+    // Restocks per second over the last minute, filled in once per second by the timer
+    private final long[] perSecond = new long[60];
+    private int secondIndex = 0;
+    private long lastSecondTotal = 0L;
+
+    private volatile long startedAt = System.currentTimeMillis();
+
+    public void recordTick(long nanos) {
+        tickHistogram.incrementAndGet(bucket(nanos));
+        tickCount.increment();
+        tickNanos.add(nanos);
+        updateMax(tickMaxNanos, nanos);
+    }
+
+    public void recordRestock() {
+        restocks.increment();
+    }
+
+    public void recordSkipped() {
+        skipped.increment();
+    }
+
+    public void recordDeferred() {
+        deferred.increment();
+    }
+
+    public void recordInactive() {
+        inactive.increment();
+    }
+
+    public void recordChunkRestock() {
+        chunkRestocks.increment();
+    }
+
+    public void recordRemoved() {
+        removed.increment();
+    }
+
+    public void recordSave(long nanos) {
+        saves.increment();
+        saveNanos.add(nanos);
+        updateMax(saveMaxNanos, nanos);
+    }
+
+    // Called from the async save task
+    public void recordJournalFlush(long nanos) {
+        journalFlushes.increment();
+        journalFlushNanos.add(nanos);
+        updateMax(journalFlushMaxNanos, nanos);
+    }
+
+    // Called by the timer every 20 ticks
+    public void rollSecond() {
+        long total = restocks.sum();
+        synchronized (perSecond) {
+            perSecond[secondIndex] = total - lastSecondTotal;
+            secondIndex = (secondIndex + 1) % perSecond.length;
+        }
+        lastSecondTotal = total;
+    }
+
+    public double getRestocksPerSecond() {
+        long sum = 0L;
+        synchronized (perSecond) {
+            for (long count : perSecond) sum += count;
+        }
+        long seconds = Math.min(perSecond.length, Math.max(1L, (System.currentTimeMillis() - startedAt) / 1000L));
+        return (double) sum / seconds;
+    }
+
+    // Upper bound of the bucket holding the given percentile, in nanoseconds
+    public long getTickPercentile(double percentile) {
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) total += tickHistogram.get(i);
+        if (total == 0L) return 0L;
+
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += tickHistogram.get(i);
+            if (seen >= target) return 1L << (i + 1);
+        }
+        return 1L << BUCKETS;
+    }
+
+    public long getTickCount() {
+        return tickCount.sum();
+    }
+
+    public long getTickAverageNanos() {
+        long count = tickCount.sum();
+        return count > 0 ? tickNanos.sum() / count : 0L;
+    }
+
+    public long getTickMaxNanos() {
+        return tickMaxNanos.get();
+    }
+
+    public long getRestocks() {
+        return restocks.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getDeferred() {
+        return deferred.sum();
+    }
+
+    public long getInactive() {
+        return inactive.sum();
+    }
+
+    public long getChunkRestocks() {
+        return chunkRestocks.sum();
+    }
+
+    public long getRemoved() {
+        return removed.sum();
+    }
+
+    public long getSaves() {
+        return saves.sum();
+    }
+
+    public long getSaveAverageNanos() {
+        long count = saves.sum();
+        return count > 0 ? saveNanos.sum() / count : 0L;
+    }
+
+    public long getSaveMaxNanos() {
+        return saveMaxNanos.get();
+    }
+
+    public long getJournalFlushes() {
+        return journalFlushes.sum();
+    }
+
+    public long getJournalFlushAverageNanos() {
+        long count = journalFlushes.sum();
+        return count > 0 ? journalFlushNanos.sum() / count : 0L;
+    }
+
+    public long getJournalFlushMaxNanos() {
+        return journalFlushMaxNanos.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) tickHistogram.set(i, 0L);
+        tickCount.reset();
+        tickNanos.reset();
+        tickMaxNanos.set(0L);
+        restocks.reset();
+        skipped.reset();
+        deferred.reset();
+        inactive.reset();
+        chunkRestocks.reset();
+        removed.reset();
+        saves.reset();
+        saveNanos.reset();
+        saveMaxNanos.set(0L);
+        journalFlushes.reset();
+        journalFlushNanos.reset();
+        journalFlushMaxNanos.set(0L);
+        synchronized (perSecond) {
+            for (int i = 0; i < perSecond.length; i++) perSecond[i] = 0L;
+        }
+        lastSecondTotal = 0L;
+        startedAt = System.currentTimeMillis();
+    }
+
+    // Appends one line to the CSV file, writing the header if the file is new
+    public void appendCsv(File file, int containers, int scheduled, int pending) throws IOException {
+        boolean header = !file.exists();
+        try (Writer writer = new FileWriter(file, true)) {
+            if (header) {
+                writer.write("timestamp,containers,scheduled,pending,ticks,tick_avg_us,tick_p50_us,tick_p99_us,tick_max_us,"
+                        + "restocks,restocks_per_second,skipped,deferred,chunk_restocks,removed,saves,save_avg_ms,save_max_ms,inactive,"
+                        + "journal_flushes,journal_flush_avg_us,journal_flush_max_us\n");
+            }
+            writer.write(System.currentTimeMillis() + "," + containers + "," + scheduled + "," + pending + ","
+                    + getTickCount() + "," + getTickAverageNanos() / 1000L + "," + getTickPercentile(0.5) / 1000L + ","
+                    + getTickPercentile(0.99) / 1000L + "," + getTickMaxNanos() / 1000L + ","
+                    + getRestocks() + "," + String.format("%.2f", getRestocksPerSecond()) + "," + getSkipped() + ","
+                    + getDeferred() + "," + getChunkRestocks() + "," + getRemoved() + ","
+                    + getSaves() + "," + getSaveAverageNanos() / 1000000L + "," + getSaveMaxNanos() / 1000000L + "," + getInactive() + ","
+                    + getJournalFlushes() + "," + getJournalFlushAverageNanos() / 1000L + "," + getJournalFlushMaxNanos() / 1000L + "\n");
+        }
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos <= 1L) return 0;
+        return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) return;
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads and writes the container registry as either restocks.yml or the compact restocks.dat.
+ * Writes may come from the async saver, they are serialized on a lock and replace the file atomically.
+ */
+public class RestockStorage {
+
+    public static final String YAML_FILE = "restocks.yml";
+    public static final String BINARY_FILE = "restocks.dat";
+    public static final String EXPORT_FILE = "restocks-export.yml";
+
+    private static final int MAGIC = 0x43555253; // "CURS"
+    private static final int VERSION = 1;
+
+    private final File dataFolder;
+    private volatile boolean binary;
+
+    private final Object writeLock = new Object();
+    private long writtenSequence = 0L;
+
+    public RestockStorage(File dataFolder) {
+        this.dataFolder = dataFolder;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public String getFileName() {
+        return binary ? BINARY_FILE : YAML_FILE;
+    }
+
+    // Returns null when there is nothing to load yet
+    public RegistrySnapshot load(int defaultRestockTime) throws IOException {
+        File binaryFile = new File(dataFolder, BINARY_FILE);
+        File yamlFile = new File(dataFolder, YAML_FILE);
+
+        if (binary && binaryFile.exists()) {
+            return readBinary(binaryFile);
+        }
+        if (yamlFile.exists()) {
+            RegistrySnapshot loaded = readYaml(yamlFile, defaultRestockTime);
+            if (binary) {
+                // One-time conversion, writing the binary file moves the yaml file to a backup
+                synchronized (writeLock) {
+                    writeFile(loaded);
+                }
+                System.out.println(ChatColor.GREEN + "[ContainerUtils] Converted " + YAML_FILE + " to " + BINARY_FILE);
+            }
+            return loaded;
+        }
+        if (!binary && binaryFile.exists()) {
+            return readBinary(binaryFile);
+        }
+        return null;
+    }
+
+    // Writes the snapshot unless a newer one has already been written
+    public void write(RegistrySnapshot snapshot, long sequence) throws IOException {
+        synchronized (writeLock) {
+            if (sequence <= writtenSequence) return;
+            writeFile(snapshot);
+            writtenSequence = sequence;
+        }
+    }
+
+    // The other format's file is moved to a backup once this one is written, otherwise switching the format back
+    // later would load it and silently drop everything saved in between
+    private void writeFile(RegistrySnapshot snapshot) throws IOException {
+        String name = getFileName();
+        File file = new File(dataFolder, name);
+        File temp = new File(dataFolder, name + ".tmp");
+        if (binary) {
+            writeBinary(snapshot, temp);
+        } else {
+            writeYaml(snapshot, temp);
+        }
+        replaceFile(temp, file);
+
+        String otherName = binary ? YAML_FILE : BINARY_FILE;
+        File other = new File(dataFolder, otherName);
+        if (other.exists()) replaceFile(other, new File(dataFolder, otherName + ".bak"));
+    }
+
+    // Reads both the current layout (templates + containers sections) and the original one with items inline per container
+    @SuppressWarnings("unchecked")
+    public RegistrySnapshot readYaml(File file, int defaultRestockTime) throws IOException {
+        List<ContainerSnapshot> result = new ArrayList<>();
+        Map<String, RestockTemplate> names = new HashMap<>();
+        List<GroupSnapshot> groups = new ArrayList<>();
+        long loadTime = System.currentTimeMillis();
+
+        Object raw;
+        try (InputStream input = new FileInputStream(file)) {
+            raw = new Yaml().load(input);
+        }
+        if (!(raw instanceof Map)) return new RegistrySnapshot(result, names, groups);
+
+        Map<String, Object> data = (Map<String, Object>) raw;
+        Map<String, RestockTemplate> templates = new HashMap<>();
+        Map<String, Object> containerSection = data;
+
+        if (data.get("containers") instanceof Map) {
+            containerSection = (Map<String, Object>) data.get("containers");
+
+            Object templateSection = data.get("templates");
+            if (templateSection instanceof Map) {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) templateSection).entrySet()) {
+                    ItemStack[] items = readYamlItems((List<Map<String, Object>>) entry.getValue());
+                    templates.put(String.valueOf(entry.getKey()), new RestockTemplate(String.valueOf(entry.getKey()), items));
+                }
+            }
+
+            Object nameSection = data.get("template-names");
+            if (nameSection instanceof Map) {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) nameSection).entrySet()) {
+                    RestockTemplate template = templates.get(String.valueOf(entry.getValue()));
+                    if (template != null) names.put(entry.getKey(), template);
+                }
+            }
+
+            Object groupSection = data.get("groups");
+            if (groupSection instanceof Map) {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) groupSection).entrySet()) {
+                    Map<String, Object> groupData = (Map<String, Object>) entry.getValue();
+                    groups.add(new GroupSnapshot(String.valueOf(entry.getKey()), ((Number) groupData.get("restock_time")).intValue(),
+                            ((Number) groupData.get("due")).longValue()));
+                }
+            }
+        }
+
+        for (Map.Entry<String, Object> entry : containerSection.entrySet()) {
+            ContainerKey loc = ContainerKey.parse(entry.getKey());
+            if (loc == null) {
+                System.out.println(ChatColor.RED + "[ContainerUtils] Skipping invalid container location: " + entry.getKey());
+                continue;
+            }
+            Map<String, Object> containerData = (Map<String, Object>) entry.getValue();
+
+            RestockTemplate template;
+            if (containerData.containsKey("template")) {
+                template = templates.get(String.valueOf(containerData.get("template")));
+                if (template == null) {
+                    System.out.println(ChatColor.RED + "[ContainerUtils] Skipping container with missing template: " + entry.getKey());
+                    continue;
+                }
+            } else {
+                ItemStack[] items = readYamlItems((List<Map<String, Object>>) containerData.get("items"));
+                template = new RestockTemplate(RestockTemplate.contentId(items), items);
+            }
+
+            // Older files store the seconds left, counted from now
+            long due = containerData.get("due") instanceof Number
+                    ? ((Number) containerData.get("due")).longValue()
+                    : loadTime + ((Number) containerData.get("timer")).intValue() * 1000L;
+            int customTime = containerData.containsKey("restock_time") ? (int) containerData.get("restock_time") : defaultRestockTime;
+            Object lootTable = containerData.get("loot_table");
+            Object group = containerData.get("group");
+
+            result.add(new ContainerSnapshot(loc, template, due, customTime, lootTable != null ? lootTable.toString() : null,
+                    group != null ? group.toString() : null));
+        }
+        return new RegistrySnapshot(result, names, groups);
+    }
+
+    private static ItemStack[] readYamlItems(List<Map<String, Object>> itemData) {
+        ItemStack[] contents = new ItemStack[itemData.size()];
+        for (int i = 0; i < itemData.size(); i++) {
+            Map<String, Object> itemMap = itemData.get(i);
+            contents[i] = itemMap != null ? ContainerUtils.deserializeItemStack(itemMap) : null;
+        }
+        return contents;
+    }
+
+    public void writeYaml(RegistrySnapshot snapshot, File file) throws IOException {
+        Map<String, Object> templates = new LinkedHashMap<>();
+        Map<String, Object> containers = new LinkedHashMap<>();
+        Map<String, Object> names = new LinkedHashMap<>();
+
+        for (ContainerSnapshot container : snapshot.containers) {
+            addYamlTemplate(templates, container.template);
+
+            Map<String, Object> containerData = new LinkedHashMap<>();
+            containerData.put("template", container.template.getId());
+            containerData.put("due", container.due);
+            containerData.put("restock_time", container.restockTime);
+            if (container.lootTable != null) containerData.put("loot_table", container.lootTable);
+            if (container.group != null) containerData.put("group", container.group);
+            containers.put(container.key.toString(), containerData);
+        }
+        for (Map.Entry<String, RestockTemplate> entry : snapshot.namedTemplates.entrySet()) {
+            addYamlTemplate(templates, entry.getValue());
+            names.put(entry.getKey(), entry.getValue().getId());
+        }
+
+        Map<String, Object> groups = new LinkedHashMap<>();
+        for (GroupSnapshot group : snapshot.groups) {
+            Map<String, Object> groupData = new LinkedHashMap<>();
+            groupData.put("restock_time", group.restockTime);
+            groupData.put("due", group.due);
+            groups.put(group.name, groupData);
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("templates", templates);
+        data.put("groups", groups);
+        data.put("template-names", names);
+        data.put("containers", containers);
+
+        // Synced like the binary file, once the rename lands the old journal that covered this snapshot is deleted
+        try (FileOutputStream output = new FileOutputStream(file);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            new Yaml().dump(data, writer);
+            writer.flush();
+            output.getFD().sync();
+        }
+    }
+
+    private static void addYamlTemplate(Map<String, Object> templates, RestockTemplate template) {
+        if (templates.containsKey(template.getId())) return;
+
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (ItemStack item : template.getItems()) {
+            items.add(item != null ? ContainerUtils.serializeItemStack(item) : null);
+        }
+        templates.put(template.getId(), items);
+    }
+
+    // Layout: magic, version, world name table, material table, template table, template name table, group table, then per
+    // container world index, x/y/z, due time in epoch millis, restock time, template index, loot table name (empty for none)
+    // and group index + 1 (0 = none). A group is its name, restock time and due time. A material is its name
+    // (empty when the server has no Material for it) and type id. A template is a slot count followed by material index + 1
+    // (0 = empty), amount and durability per slot.
+    // Every integer after the header is a varint, signed values are zigzag encoded.
+    public RegistrySnapshot readBinary(File file) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buf = ByteBuffer.allocate((int) channel.size());
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                // keep reading until the buffer is full
+            }
+        }
+        buf.flip();
+
+        try {
+            if (buf.getInt() != MAGIC) throw new IOException("Not a restock data file");
+            int version = buf.get() & 0xFF;
+            if (version != VERSION) throw new IOException("Unsupported restock data version " + version);
+
+            String[] worlds = new String[readVarInt(buf)];
+            for (int i = 0; i < worlds.length; i++) worlds[i] = readString(buf);
+
+            // Type ids, -1 for names that can't be resolved
+            int[] materials = new int[readVarInt(buf)];
+            for (int i = 0; i < materials.length; i++) {
+                String name = readString(buf);
+                int id = readVarInt(buf);
+                Material type = name.isEmpty() ? null : MaterialTable.byName(name);
+                materials[i] = type != null ? type.getId() : id;
+                if (materials[i] < 0) {
+                    System.out.println(ChatColor.RED + "[ContainerUtils] Unknown material in " + file.getName() + ": " + name);
+                }
+            }
+
+            RestockTemplate[] templates = new RestockTemplate[readVarInt(buf)];
+            for (int i = 0; i < templates.length; i++) {
+                ItemStack[] items = readBinaryItems(buf, materials);
+                templates[i] = new RestockTemplate(RestockTemplate.contentId(items), items);
+            }
+            Map<String, RestockTemplate> names = new HashMap<>();
+            int nameCount = readVarInt(buf);
+            for (int i = 0; i < nameCount; i++) {
+                String name = readString(buf);
+                names.put(name, templates[readVarInt(buf)]);
+            }
+
+            List<GroupSnapshot> groups = new ArrayList<>();
+            int groupCount = readVarInt(buf);
+            for (int i = 0; i < groupCount; i++) {
+                groups.add(new GroupSnapshot(readString(buf), readVarInt(buf), readVarLong(buf)));
+            }
+
+            int count = readVarInt(buf);
+            List<ContainerSnapshot> result = new ArrayList<>(count);
+            for (int c = 0; c < count; c++) {
+                String world = worlds[readVarInt(buf)];
+                int x = readSignedVarInt(buf);
+                int y = readSignedVarInt(buf);
+                int z = readSignedVarInt(buf);
+                long due = readVarLong(buf);
+                int restockTime = readVarInt(buf);
+                RestockTemplate template = templates[readVarInt(buf)];
+                String lootTable = readString(buf);
+                int group = readVarInt(buf);
+
+                result.add(new ContainerSnapshot(ContainerKey.of(world, x, y, z), template, due, restockTime,
+                        lootTable.isEmpty() ? null : lootTable, group > 0 ? groups.get(group - 1).name : null));
+            }
+            return new RegistrySnapshot(result, names, groups);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Truncated or corrupt " + file.getName());
+        }
+    }
+
+    private static ItemStack[] readBinaryItems(ByteBuffer buf, int[] materials) throws IOException {
+        ItemStack[] items = new ItemStack[readVarInt(buf)];
+        for (int i = 0; i < items.length; i++) {
+            int material = readVarInt(buf);
+            if (material == 0) continue;
+            int amount = readVarInt(buf);
+            short durability = (short) readSignedVarInt(buf);
+            int typeId = materials[material - 1];
+            if (typeId >= 0) items[i] = new ItemStack(typeId, amount, durability);
+        }
+        return items;
+    }
+
+    public void writeBinary(RegistrySnapshot snapshot, File file) throws IOException {
+        Map<String, Integer> worldIds = new LinkedHashMap<>();
+        Map<Integer, Integer> materialIds = new LinkedHashMap<>();
+        Map<String, Integer> templateIds = new HashMap<>();
+        List<RestockTemplate> templates = new ArrayList<>();
+
+        List<RestockTemplate> used = new ArrayList<>();
+        for (ContainerSnapshot container : snapshot.containers) {
+            worldIds.putIfAbsent(container.key.getWorldName(), worldIds.size());
+            used.add(container.template);
+        }
+        used.addAll(snapshot.namedTemplates.values());
+        for (RestockTemplate template : used) {
+            if (templateIds.putIfAbsent(template.getId(), templates.size()) != null) continue;
+            templates.add(template);
+            for (ItemStack item : template.getItems()) {
+                if (item != null) materialIds.putIfAbsent(item.getTypeId(), materialIds.size());
+            }
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        buf.putInt(MAGIC);
+        buf.put((byte) VERSION);
+
+        buf = writeVarInt(buf, worldIds.size());
+        for (String world : worldIds.keySet()) buf = writeString(buf, world);
+        buf = writeVarInt(buf, materialIds.size());
+        for (int typeId : materialIds.keySet()) {
+            Material material = MaterialTable.byId(typeId);
+            buf = writeString(buf, material != null ? material.name() : "");
+            buf = writeVarInt(buf, typeId);
+        }
+
+        buf = writeVarInt(buf, templates.size());
+        for (RestockTemplate template : templates) {
+            buf = writeVarInt(buf, template.getSize());
+            for (ItemStack item : template.getItems()) {
+                if (item == null) {
+                    buf = writeVarInt(buf, 0);
+                    continue;
+                }
+                buf = writeVarInt(buf, materialIds.get(item.getTypeId()) + 1);
+                buf = writeVarInt(buf, item.getAmount());
+                buf = writeSignedVarInt(buf, item.getDurability());
+            }
+        }
+        buf = writeVarInt(buf, snapshot.namedTemplates.size());
+        for (Map.Entry<String, RestockTemplate> entry : snapshot.namedTemplates.entrySet()) {
+            buf = writeString(buf, entry.getKey());
+            buf = writeVarInt(buf, templateIds.get(entry.getValue().getId()));
+        }
+
+        Map<String, Integer> groupIds = new HashMap<>();
+        buf = writeVarInt(buf, snapshot.groups.size());
+        for (GroupSnapshot group : snapshot.groups) {
+            groupIds.put(group.name, groupIds.size());
+            buf = writeString(buf, group.name);
+            buf = writeVarInt(buf, group.restockTime);
+            buf = writeVarLong(buf, group.due);
+        }
+
+        buf = writeVarInt(buf, snapshot.containers.size());
+        for (ContainerSnapshot container : snapshot.containers) {
+            ContainerKey key = container.key;
+            buf = writeVarInt(buf, worldIds.get(key.getWorldName()));
+            buf = writeSignedVarInt(buf, key.getX());
+            buf = writeSignedVarInt(buf, key.getY());
+            buf = writeSignedVarInt(buf, key.getZ());
+            buf = writeVarLong(buf, container.due);
+            buf = writeVarInt(buf, container.restockTime);
+            buf = writeVarInt(buf, templateIds.get(container.template.getId()));
+            buf = writeString(buf, container.lootTable != null ? container.lootTable : "");
+            Integer group = container.group != null ? groupIds.get(container.group) : null;
+            buf = writeVarInt(buf, group != null ? group + 1 : 0);
+        }
+
+        buf.flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(false);
+        }
+    }
+
+    static void replaceFile(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static ByteBuffer ensure(ByteBuffer buf, int needed) {
+        if (buf.remaining() >= needed) return buf;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + needed));
+        buf.flip();
+        grown.put(buf);
+        return grown;
+    }
+
+    static ByteBuffer writeVarInt(ByteBuffer buf, int value) {
+        buf = ensure(buf, 5);
+        while ((value & ~0x7F) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+        return buf;
+    }
+
+    static ByteBuffer writeVarLong(ByteBuffer buf, long value) {
+        buf = ensure(buf, 10);
+        while ((value & ~0x7FL) != 0L) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+        return buf;
+    }
+
+    static ByteBuffer writeSignedVarInt(ByteBuffer buf, int value) {
+        return writeVarInt(buf, (value << 1) ^ (value >> 31));
+    }
+
+    static ByteBuffer writeString(ByteBuffer buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buf = writeVarInt(buf, bytes.length);
+        buf = ensure(buf, bytes.length);
+        buf.put(bytes);
+        return buf;
+    }
+
+    static int readVarInt(ByteBuffer buf) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buf.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long readVarLong(ByteBuffer buf) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varlong");
+    }
+
+    static int readSignedVarInt(ByteBuffer buf) throws IOException {
+        int raw = readVarInt(buf);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    static String readString(ByteBuffer buf) throws IOException {
+        byte[] bytes = new byte[readVarInt(buf)];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,71 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Immutable restock contents shared by every container that registered identical items.
+ * The id is a content hash over slot position, type, amount and durability, so it is stable across restarts.
+ */
+public final class RestockTemplate {
+
+    private final String id;
+    private final ItemStack[] items;
+
+    public RestockTemplate(String id, ItemStack[] items) {
+        this.id = id;
+        this.items = items;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    // Shared between containers, callers must clone stacks before handing them to an inventory
+    public ItemStack[] getItems() {
+        return items;
+    }
+
+    public int getSize() {
+        return items.length;
+    }
+
+    public boolean sameContents(ItemStack[] other) {
+        if (other.length != items.length) return false;
+        for (int i = 0; i < items.length; i++) {
+            if (!sameStack(items[i], other[i])) return false;
+        }
+        return true;
+    }
+
+    // In Beta the data value of wool, dye and logs is the durability, so comparing it covers both
+    static boolean sameStack(ItemStack a, ItemStack b) {
+        if (a == null || b == null) return a == b;
+        return a.getTypeId() == b.getTypeId()
+                && a.getAmount() == b.getAmount()
+                && a.getDurability() == b.getDurability();
+    }
+
+    // 64-bit FNV-1a over the slot contents
+    public static String contentId(ItemStack[] items) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, items.length);
+        for (ItemStack item : items) {
+            if (item == null) {
+                hash = mix(hash, -1);
+                continue;
+            }
+            hash = mix(hash, item.getTypeId());
+            hash = mix(hash, item.getAmount());
+            hash = mix(hash, item.getDurability());
+        }
+        return String.format("%016x", hash);
+    }
+
+    private static long mix(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,20 @@
+package org.garsooon.containerutils;
+
+/**
+ * Something with a restock deadline, a single container or a whole group.
+ * The deadline and queue position are owned by DeadlineQueue.
+ */
+public abstract class Scheduled {
+
+    long deadline = -1L;
+    int queueIndex = -1;
+
+    /** Absolute plugin tick of the next restock, or -1 when not scheduled. */
+    public long getDeadline() {
+        return queueIndex >= 0 ? deadline : -1L;
+    }
+
+    public boolean isScheduled() {
+        return queueIndex >= 0;
+    }
+}
@@ -0,0 +1,75 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed store of restock templates, identical contents are kept once
+ * no matter how many containers use them. Named templates are never pruned.
+ */
+public class TemplatePool {
+
+    private final Map<String, RestockTemplate> templates = new ConcurrentHashMap<>();
+    private final Map<String, RestockTemplate> named = new ConcurrentHashMap<>();
+
+    public RestockTemplate intern(ItemStack[] items) {
+        String base = RestockTemplate.contentId(items);
+        String id = base;
+        for (int n = 1; ; n++) {
+            RestockTemplate existing = templates.get(id);
+            if (existing == null) {
+                RestockTemplate template = new RestockTemplate(id, items);
+                templates.put(id, template);
+                return template;
+            }
+            if (existing.sameContents(items)) return existing;
+            // Hash collision with different contents
+            id = base + "-" + n;
+        }
+    }
+
+    public RestockTemplate intern(RestockTemplate template) {
+        RestockTemplate existing = templates.get(template.getId());
+        if (existing == template) return template;
+        return intern(template.getItems());
+    }
+
+    public RestockTemplate get(String id) {
+        return templates.get(id);
+    }
+
+    public RestockTemplate getNamed(String name) {
+        return named.get(name.toLowerCase());
+    }
+
+    public void setName(String name, RestockTemplate template) {
+        named.put(name.toLowerCase(), intern(template));
+    }
+
+    public boolean removeName(String name) {
+        return named.remove(name.toLowerCase()) != null;
+    }
+
+    public Map<String, RestockTemplate> getNamed() {
+        return Collections.unmodifiableMap(named);
+    }
+
+    // Drops templates that are neither named nor used by any container
+    public void prune(Collection<RestockContainer> containers) {
+        Set<String> used = new HashSet<>();
+        for (RestockContainer container : containers) used.add(container.getTemplate().getId());
+        for (RestockTemplate template : named.values()) used.add(template.getId());
+        templates.keySet().retainAll(used);
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public void clear() {
+        templates.clear();
+        named.clear();
+    }
+}
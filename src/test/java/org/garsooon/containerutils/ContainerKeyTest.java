@@ -0,0 +1,70 @@
+package org.garsooon.containerutils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ContainerKeyTest {
+
+    // x and z get 26 bits, y 12 bits, all sign extended on the way out
+    private static final int MIN_XZ = -(1 << 25);
+    private static final int MAX_XZ = (1 << 25) - 1;
+    private static final int MIN_Y = -(1 << 11);
+    private static final int MAX_Y = (1 << 11) - 1;
+
+    @Test
+    public void packsNegativeCoordinates() {
+        assertPosition(ContainerKey.of("world", -1, -1, -1), -1, -1, -1);
+        assertPosition(ContainerKey.of("world", -30000000, 0, 29999999), -30000000, 0, 29999999);
+        assertPosition(ContainerKey.of("world", -17, 5, -16), -17, 5, -16);
+    }
+
+    @Test
+    public void packsRangeLimits() {
+        assertPosition(ContainerKey.of("world", MIN_XZ, MIN_Y, MIN_XZ), MIN_XZ, MIN_Y, MIN_XZ);
+        assertPosition(ContainerKey.of("world", MAX_XZ, MAX_Y, MAX_XZ), MAX_XZ, MAX_Y, MAX_XZ);
+        assertPosition(ContainerKey.of("world", MIN_XZ, MAX_Y, MAX_XZ), MIN_XZ, MAX_Y, MAX_XZ);
+        assertPosition(ContainerKey.of("world", MAX_XZ, MIN_Y, MIN_XZ), MAX_XZ, MIN_Y, MIN_XZ);
+    }
+
+    @Test
+    public void chunkOfNegativeCoordinates() {
+        ContainerKey key = ContainerKey.of("world", -1, 64, -17);
+        assertEquals(-1, key.getChunkX());
+        assertEquals(-2, key.getChunkZ());
+        assertEquals(ContainerKey.chunkKey(-1, -2), key.getChunkKey());
+    }
+
+    @Test
+    public void equalityIncludesWorld() {
+        assertEquals(ContainerKey.of("world", -5, 10, 7), ContainerKey.of("world", -5, 10, 7));
+        assertEquals(ContainerKey.of("world", -5, 10, 7).hashCode(), ContainerKey.of("world", -5, 10, 7).hashCode());
+        assertFalse(ContainerKey.of("world", -5, 10, 7).equals(ContainerKey.of("world_nether", -5, 10, 7)));
+        assertFalse(ContainerKey.of("world", -5, 10, 7).equals(ContainerKey.of("world", 5, 10, 7)));
+    }
+
+    @Test
+    public void parseKeepsColonsInWorldName() {
+        ContainerKey key = ContainerKey.parse("maps:spawn:-5:64:-300");
+        assertNotNull(key);
+        assertEquals("maps:spawn", key.getWorldName());
+        assertPosition(key, -5, 64, -300);
+        assertEquals("maps:spawn:-5:64:-300", key.toString());
+        assertEquals(key, ContainerKey.parse(key.toString()));
+    }
+
+    @Test
+    public void parseRejectsMalformedKeys() {
+        assertNull(ContainerKey.parse("world:1:2"));
+        assertNull(ContainerKey.parse(":1:2:3"));
+        assertNull(ContainerKey.parse("world:a:2:3"));
+        assertNull(ContainerKey.parse("world:1:2:"));
+        assertNull(ContainerKey.parse(""));
+    }
+
+    private static void assertPosition(ContainerKey key, int x, int y, int z) {
+        assertEquals(x, key.getX());
+        assertEquals(y, key.getY());
+        assertEquals(z, key.getZ());
+    }
+}
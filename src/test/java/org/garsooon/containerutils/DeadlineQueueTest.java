@@ -0,0 +1,84 @@
+package org.garsooon.containerutils;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeadlineQueueTest {
+
+    private static final class Entry extends Scheduled {
+        long expected = -1L;
+    }
+
+    // Schedules, reschedules, cancels and polls at random and checks every step against a PriorityQueue
+    @Test
+    public void matchesReferenceQueue() {
+        Random random = new Random(42L);
+        Entry[] entries = new Entry[200];
+        for (int i = 0; i < entries.length; i++) entries[i] = new Entry();
+
+        DeadlineQueue<Entry> queue = new DeadlineQueue<>();
+        PriorityQueue<Entry> reference = new PriorityQueue<>(Comparator.comparingLong((Entry e) -> e.expected));
+        long now = 0L;
+
+        for (int step = 0; step < 100000; step++) {
+            Entry entry = entries[random.nextInt(entries.length)];
+            int op = random.nextInt(10);
+            if (op < 5) {
+                // An entry that is already queued is moved earlier or later in place
+                long deadline = now + random.nextInt(100);
+                reference.remove(entry);
+                entry.expected = deadline;
+                reference.add(entry);
+                queue.schedule(entry, deadline);
+            } else if (op < 7) {
+                assertEquals(reference.remove(entry), queue.cancel(entry));
+            } else {
+                now += random.nextInt(5);
+                Entry polled;
+                while ((polled = queue.pollDue(now)) != null) {
+                    Entry earliest = reference.peek();
+                    assertNotNull(earliest);
+                    // Entries with the same deadline may come out in any order
+                    assertEquals(earliest.expected, polled.expected);
+                    assertTrue(polled.expected <= now);
+                    assertTrue(reference.remove(polled));
+                    assertFalse(polled.isScheduled());
+                }
+                assertTrue(reference.isEmpty() || reference.peek().expected > now);
+            }
+
+            assertEquals(reference.size(), queue.size());
+            assertEquals(reference.isEmpty() ? Long.MAX_VALUE : reference.peek().expected, queue.peekDeadline());
+            assertEquals(entry.isScheduled() ? entry.expected : -1L, entry.getDeadline());
+            assertEquals(reference.contains(entry), entry.isScheduled());
+        }
+
+        queue.clear();
+        assertEquals(0, queue.size());
+        for (Entry entry : entries) assertFalse(entry.isScheduled());
+    }
+
+    @Test
+    public void rescheduleKeepsOneQueueEntry() {
+        DeadlineQueue<Entry> queue = new DeadlineQueue<>();
+        Entry first = new Entry();
+        Entry second = new Entry();
+        queue.schedule(first, 10L);
+        queue.schedule(second, 20L);
+
+        queue.schedule(first, 30L);
+        assertEquals(2, queue.size());
+        assertSame(second, queue.pollDue(25L));
+        assertNull(queue.pollDue(25L));
+
+        queue.schedule(first, 5L);
+        assertEquals(1, queue.size());
+        assertSame(first, queue.pollDue(5L));
+        assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,59 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.inventory.ItemStack;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ItemRoundTripTest {
+
+    // No Material has this id, mods and newer servers can still leave such stacks in a chest
+    private static final int UNKNOWN_TYPE_ID = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void yamlKeepsUnknownTypeId() {
+        Map<String, Object> map = ContainerUtils.serializeItemStack(new ItemStack(UNKNOWN_TYPE_ID, 5, (short) 3));
+        assertEquals(UNKNOWN_TYPE_ID, map.get("id"));
+
+        assertStack(ContainerUtils.deserializeItemStack(map), UNKNOWN_TYPE_ID, 5, (short) 3);
+    }
+
+    @Test
+    public void binaryKeepsUnknownTypeIdAndDurability() throws Exception {
+        ItemStack[] items = new ItemStack[27];
+        items[0] = new ItemStack(UNKNOWN_TYPE_ID, 2, (short) 0);
+        // Red wool, the colour is the durability
+        items[5] = new ItemStack(35, 16, (short) 14);
+        RestockTemplate template = new RestockTemplate(RestockTemplate.contentId(items), items);
+        ContainerSnapshot container = new ContainerSnapshot(ContainerKey.of("world", 1, 64, -3), template, 1234L, 300, null, null);
+
+        RestockStorage storage = new RestockStorage(folder.getRoot());
+        File file = folder.newFile("restocks.dat");
+        storage.writeBinary(new RegistrySnapshot(Collections.singletonList(container),
+                Collections.<String, RestockTemplate>emptyMap(), Collections.<GroupSnapshot>emptyList()), file);
+
+        RegistrySnapshot read = storage.readBinary(file);
+        assertEquals(1, read.containers.size());
+        RestockTemplate readTemplate = read.containers.get(0).template;
+        assertEquals(template.getId(), readTemplate.getId());
+        assertTrue(template.sameContents(readTemplate.getItems()));
+        assertStack(readTemplate.getItems()[0], UNKNOWN_TYPE_ID, 2, (short) 0);
+        assertStack(readTemplate.getItems()[5], 35, 16, (short) 14);
+    }
+
+    private static void assertStack(ItemStack item, int typeId, int amount, short durability) {
+        assertNotNull(item);
+        assertEquals(typeId, item.getTypeId());
+        assertEquals(amount, item.getAmount());
+        assertEquals(durability, item.getDurability());
+    }
+}
@@ -0,0 +1,202 @@
+package org.garsooon.containerutils;
+
+import org.bukkit.inventory.ItemStack;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RestockJournalTest {
+
+    private static final ContainerKey A = ContainerKey.of("world", 1, 64, 1);
+    private static final ContainerKey B = ContainerKey.of("world", -20, 12, 300);
+    private static final ContainerKey C = ContainerKey.of("world_nether", 5, 100, -5);
+    private static final ContainerKey D = ContainerKey.of("world", 0, 0, 0);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void newJournalStartsWithHeader() throws Exception {
+        RestockJournal journal = new RestockJournal(folder.getRoot());
+        journal.register(A, template(1), 300, 1000L, null, null);
+        journal.flush();
+        journal.close();
+
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(journalFile().toPath()));
+        assertEquals(0x43555244, header.getInt());
+        assertEquals(1, header.get());
+    }
+
+    @Test
+    public void replayStopsAtTornTail() throws Exception {
+        RestockJournal journal = new RestockJournal(folder.getRoot());
+        journal.register(A, template(1), 300, 1000L, null, null);
+        journal.flush();
+        long firstRecordEnd = journalFile().length();
+        journal.register(B, template(2), 300, 2000L, null, null);
+        journal.flush();
+        journal.close();
+
+        // Cut the second record in half, like a crash in the middle of the write
+        try (RandomAccessFile file = new RandomAccessFile(journalFile(), "rw")) {
+            file.setLength(firstRecordEnd + (file.length() - firstRecordEnd) / 2);
+        }
+
+        Map<ContainerKey, ContainerSnapshot> replayed = replay(null);
+        assertEquals(1, replayed.size());
+        assertEquals(1000L, replayed.get(A).due);
+    }
+
+    @Test
+    public void replayStopsAtCorruptRecord() throws Exception {
+        RestockJournal journal = new RestockJournal(folder.getRoot());
+        journal.register(A, template(1), 300, 1000L, null, null);
+        journal.flush();
+        long firstRecordEnd = journalFile().length();
+        journal.checkpoint(A, 5000L);
+        journal.register(B, template(2), 300, 2000L, null, null);
+        journal.flush();
+        journal.close();
+
+        // Flip a bit in the body of the checkpoint, its checksum no longer matches
+        try (RandomAccessFile file = new RandomAccessFile(journalFile(), "rw")) {
+            file.seek(firstRecordEnd + 3);
+            int b = file.read();
+            file.seek(firstRecordEnd + 3);
+            file.write(b ^ 0x01);
+        }
+
+        Map<ContainerKey, ContainerSnapshot> replayed = replay(null);
+        assertEquals(1, replayed.size());
+        assertEquals(1000L, replayed.get(A).due);
+    }
+
+    @Test
+    public void tornHeaderReplaysNothing() throws Exception {
+        Files.write(journalFile().toPath(), new byte[]{0x43, 0x55});
+
+        assertTrue(replay(null).isEmpty());
+        assertTrue(journalFile().exists());
+    }
+
+    @Test
+    public void otherLayoutVersionIsSetAside() throws Exception {
+        RestockJournal journal = new RestockJournal(folder.getRoot());
+        journal.register(A, template(1), 300, 1000L, null, null);
+        journal.flush();
+        journal.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(journalFile(), "rw")) {
+            file.seek(4);
+            file.write(2);
+        }
+
+        assertTrue(replay(null).isEmpty());
+        assertFalse(journalFile().exists());
+        assertTrue(new File(folder.getRoot(), RestockJournal.JOURNAL_FILE + ".unreadable").exists());
+    }
+
+    @Test
+    public void journalWithoutHeaderIsSetAside() throws Exception {
+        Files.write(journalFile().toPath(), new byte[]{5, 4, 1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertTrue(replay(null).isEmpty());
+        assertTrue(new File(folder.getRoot(), RestockJournal.JOURNAL_FILE + ".unreadable").exists());
+    }
+
+    // A compaction whose snapshot failed leaves the old journal behind, the next one extends it
+    @Test
+    public void rotateTwiceWithoutDeleteOld() throws Exception {
+        RestockJournal journal = new RestockJournal(folder.getRoot());
+        journal.register(A, template(1), 300, 1000L, null, null);
+        journal.seal();
+        journal.flush();
+
+        journal.register(B, template(2), 300, 2000L, null, null);
+        journal.flush();
+        journal.register(C, template(3), 300, 3000L, null, null);
+        journal.seal();
+        journal.flush();
+
+        journal.register(D, template(4), 300, 4000L, null, null);
+        journal.checkpoint(A, 1500L);
+        journal.flush();
+        journal.close();
+
+        assertTrue(new File(folder.getRoot(), RestockJournal.OLD_JOURNAL_FILE).exists());
+        Map<ContainerKey, ContainerSnapshot> replayed = replay(null);
+        assertEquals(4, replayed.size());
+        assertEquals(1500L, replayed.get(A).due);
+        assertEquals(2000L, replayed.get(B).due);
+        assertEquals(3000L, replayed.get(C).due);
+        assertEquals(4000L, replayed.get(D).due);
+    }
+
+    @Test
+    public void recordsUpsertOntoBaseSnapshot() throws Exception {
+        RestockTemplate baseTemplate = template(1);
+        RegistrySnapshot base = new RegistrySnapshot(Arrays.asList(
+                new ContainerSnapshot(A, baseTemplate, 1000L, 300, "dungeon", null),
+                new ContainerSnapshot(B, template(2), 2000L, 300, null, null)),
+                Collections.<String, RestockTemplate>emptyMap(), Collections.<GroupSnapshot>emptyList());
+
+        RestockJournal journal = new RestockJournal(folder.getRoot());
+        journal.checkpoint(A, 5000L);
+        journal.interval(A, 60);
+        journal.member(A, "tower");
+        journal.unregister(B);
+        journal.register(C, template(3), 120, 3000L, null, "tower");
+        // Containers the snapshot doesn't know are not created by partial records
+        journal.checkpoint(D, 4000L);
+        journal.interval(D, 10);
+        journal.flush();
+        journal.close();
+
+        Map<ContainerKey, ContainerSnapshot> replayed = replay(base);
+        assertEquals(2, replayed.size());
+
+        ContainerSnapshot a = replayed.get(A);
+        assertEquals(5000L, a.due);
+        assertEquals(60, a.restockTime);
+        assertEquals("dungeon", a.lootTable);
+        assertEquals("tower", a.group);
+        assertSame(baseTemplate, a.template);
+
+        ContainerSnapshot c = replayed.get(C);
+        assertEquals(3000L, c.due);
+        assertEquals(120, c.restockTime);
+        assertEquals(template(3).getId(), c.template.getId());
+        assertNull(replayed.get(B));
+        assertNull(replayed.get(D));
+    }
+
+    private File journalFile() {
+        return new File(folder.getRoot(), RestockJournal.JOURNAL_FILE);
+    }
+
+    private Map<ContainerKey, ContainerSnapshot> replay(RegistrySnapshot base) throws Exception {
+        Map<ContainerKey, ContainerSnapshot> result = new HashMap<>();
+        for (ContainerSnapshot container : new RestockJournal(folder.getRoot()).replay(base).containers) {
+            result.put(container.key, container);
+        }
+        return result;
+    }
+
+    private static RestockTemplate template(int variant) {
+        ItemStack[] items = new ItemStack[27];
+        items[0] = new ItemStack(264, variant, (short) 0);
+        items[13] = new ItemStack(35, 16, (short) variant);
+        return new RestockTemplate(RestockTemplate.contentId(items), items);
+    }
+}